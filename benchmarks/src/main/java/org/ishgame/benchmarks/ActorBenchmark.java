@@ -0,0 +1,108 @@
+package org.ishgame.benchmarks;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.backends.headless.mock.graphics.MockGraphics;
+import com.badlogic.gdx.graphics.GL20;
+import com.badlogic.gdx.graphics.g2d.Batch;
+import com.badlogic.gdx.math.Polygon;
+import com.badlogic.gdx.scenes.scene2d.Stage;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.GdxNativesLoader;
+import com.badlogic.gdx.utils.viewport.ScreenViewport;
+import org.ishgame.BaseActor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.reflect.Proxy;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Стоимость проверок столкновений BaseActor: пересчет граничного многоугольника и overlaps
+ * для тайла и кнопки (64x64, тайл в масштабе 0.75, как в игре), а также запросов списков Actor'ов по классу.
+ * Сцена создается без окна: графика заменена MockGraphics, а вызовы OpenGL и Batch ничего не делают.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ActorBenchmark {
+
+    private Stage stage;
+    private BaseActor box;
+    private BaseActor target;
+    private float offset;
+
+    @Setup
+    public void setup() {
+        GdxNativesLoader.load();
+        Gdx.graphics = new MockGraphics();
+        Gdx.gl = Gdx.gl20 = noOp(GL20.class);
+        stage = new Stage(new ScreenViewport(), noOp(Batch.class));
+
+        box = createActor(stage, 0.75f);
+        target = createActor(stage, 1);
+    }
+
+    private static BaseActor createActor(Stage stage, float scale) {
+        BaseActor actor = new BaseActor(0, 0, stage);
+        actor.setSize(64, 64);
+        actor.setOrigin(32, 32);
+        actor.setScale(scale);
+        actor.setBoundaryRectangle();
+        return actor;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T noOp(Class<T> type) {
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> {
+            Class<?> returnType = method.getReturnType();
+            if (returnType == boolean.class)
+                return false;
+            if (returnType == int.class)
+                return 0;
+            if (returnType == float.class)
+                return 0f;
+            return null;
+        });
+    }
+
+    @Benchmark
+    public Polygon getBoundaryPolygon() {
+        offset = (offset + 1) % 128;
+        box.setY(offset);
+        return box.getBoundaryPolygon();
+    }
+
+    @Benchmark
+    public boolean overlaps() {
+        // тайл проходит сквозь кнопку: половина проверок с пересечением, половина без
+        offset = (offset + 1) % 128;
+        box.setY(offset - 32);
+        return box.overlaps(target);
+    }
+
+    @Benchmark
+    public int countActors() {
+        return BaseActor.count(stage, BaseActor.class);
+    }
+
+    @Benchmark
+    public float iterateActors() {
+        // обход списка из реестра сцены без создания итератора
+        Array<BaseActor> actors = BaseActor.getList(stage, BaseActor.class);
+        float sum = 0;
+        for (int i = 0; i < actors.size; i++)
+            sum += actors.get(i).getY();
+        return sum;
+    }
+}
@@ -0,0 +1,57 @@
+package org.ishgame.benchmarks;
+
+import com.badlogic.gdx.files.FileHandle;
+import org.ishgame.SongData;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Скорость чтения мелодии: текстовый формат .key и двоичный .keyb.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ChartParseBenchmark {
+
+    @Param({"1000", "10000", "100000", "1000000"})
+    public int noteCount;
+
+    private FileHandle textFile;
+    private FileHandle binaryFile;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        textFile = SyntheticCharts.write(noteCount, false);
+        binaryFile = SyntheticCharts.write(noteCount, true);
+    }
+
+    @Benchmark
+    public SongData readText() {
+        SongData songData = new SongData();
+        songData.readFromFile(textFile);
+        return songData;
+    }
+
+    @Benchmark
+    public SongData readBinary() {
+        SongData songData = new SongData();
+        songData.readFromBinaryFile(binaryFile);
+        return songData;
+    }
+}
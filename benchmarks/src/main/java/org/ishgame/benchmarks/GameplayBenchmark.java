@@ -0,0 +1,93 @@
+package org.ishgame.benchmarks;
+
+import org.ishgame.SongData;
+import org.ishgame.engine.GameplayEngine;
+import org.ishgame.engine.GameplaySimulation;
+import org.ishgame.engine.ManualClock;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Стоимость игровой логики, вынесенной из RhythmScreen: один кадр цикла появления нот
+ * и одно нажатие клавиши с оценкой. Когда мелодия заканчивается, она начинается заново.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GameplayBenchmark {
+
+    // параметры экрана игры
+    private static final float LEAD_TIME = 4;
+    private static final float FRAME_STEP = 1 / 60f;
+
+    @Param({"1000", "10000", "100000", "1000000"})
+    public int noteCount;
+
+    private SongData chart;
+    private ManualClock clock;
+    private GameplayEngine engine;
+    private int nextNote;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        chart = SyntheticCharts.create(noteCount);
+
+        int[] laneColumns = new int[chart.getLaneCount()];
+        for (int i = 0; i < laneColumns.length; i++)
+            laneColumns[i] = i;
+
+        clock = new ManualClock(-LEAD_TIME);
+        engine = new GameplayEngine(chart, laneColumns.length, laneColumns, LEAD_TIME, clock, GameplaySimulation.SILENT);
+        restart();
+    }
+
+    private void restart() {
+        chart.resetIndex();
+        clock.setTime(-LEAD_TIME);
+        engine.reset();
+        nextNote = 0;
+    }
+
+    /**
+     * Один кадр без нажатий: выпуск нот и проверка промахов.
+     */
+    @Benchmark
+    public int spawnFrame() {
+        if (engine.isFinished())
+            restart();
+
+        clock.advance(FRAME_STEP);
+        engine.update();
+        return engine.getScore();
+    }
+
+    /**
+     * Точное нажатие следующей ноты: кадр в момент ноты и оценка нажатия.
+     */
+    @Benchmark
+    public int judgeKeyPress() {
+        if (nextNote == chart.keyTimeCount())
+            restart();
+
+        clock.setTime(chart.getTime(nextNote));
+        engine.update();
+        engine.keyPressed(chart.getLane(nextNote), chart.getTime(nextNote));
+        nextNote++;
+        return engine.getScore();
+    }
+}
@@ -0,0 +1,52 @@
+package org.ishgame.benchmarks;
+
+import com.badlogic.gdx.files.FileHandle;
+import org.ishgame.SongData;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * Генерирует мелодии заданного размера для бенчмарков.
+ * Ноты распределены по четырем дорожкам случайно (с фиксированным зерном),
+ * в среднем {@link #NOTES_PER_SECOND} нот в секунду.
+ */
+public final class SyntheticCharts {
+
+    public static final float NOTES_PER_SECOND = 8;
+    public static final String[] KEYS = {"A", "S", "D", "F"};
+
+    private SyntheticCharts() {
+    }
+
+    public static SongData create(int noteCount) {
+        Random random = new Random(noteCount);
+        SongData songData = new SongData();
+        songData.setSongName("synthetic.mp3");
+
+        float time = 1;
+        for (int i = 0; i < noteCount; i++) {
+            time += random.nextFloat() * 2 / NOTES_PER_SECOND;
+            songData.addKeyTime(KEYS[random.nextInt(KEYS.length)], time);
+        }
+        songData.setSongDuration(time + 1);
+        return songData;
+    }
+
+    /**
+     * Создает временный файл мелодии в текстовом (.key) или двоичном (.keyb) формате.
+     */
+    public static FileHandle write(int noteCount, boolean binary) throws IOException {
+        File file = File.createTempFile("synthetic-" + noteCount + "-", binary ? ".keyb" : ".key");
+        file.deleteOnExit();
+
+        FileHandle handle = new FileHandle(file);
+        SongData songData = create(noteCount);
+        if (binary)
+            songData.writeToBinaryFile(handle);
+        else
+            songData.writeToFile(handle);
+        return handle;
+    }
+}
@@ -0,0 +1,161 @@
+package org.ishgame.chartgen;
+
+import com.badlogic.gdx.backends.lwjgl3.audio.OggInputStream;
+import com.badlogic.gdx.files.FileHandle;
+import com.badlogic.gdx.utils.GdxRuntimeException;
+import javazoom.jl.decoder.Bitstream;
+import javazoom.jl.decoder.BitstreamException;
+import javazoom.jl.decoder.DecoderException;
+import javazoom.jl.decoder.Header;
+import javazoom.jl.decoder.MP3Decoder;
+import javazoom.jl.decoder.OutputBuffer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * Декодирует музыку (.mp3, .ogg, .wav с 16-битным PCM) в моно-сэмплы от -1 до 1.
+ * Используются те же декодеры, что и у LibGDX на компьютере: jlayer для mp3 и jorbis для ogg.
+ */
+public class AudioDecoder {
+
+    private float[] samples = new float[1 << 20];
+    private int sampleCount;
+    private int sampleRate;
+
+    /**
+     * @param file файл музыки
+     */
+    public void decode(FileHandle file) {
+        sampleCount = 0;
+        String extension = file.extension().toLowerCase();
+        try {
+            switch (extension) {
+                case "mp3":
+                    decodeMp3(file);
+                    break;
+                case "ogg":
+                    decodeOgg(file);
+                    break;
+                case "wav":
+                    decodeWav(file);
+                    break;
+                default:
+                    throw new GdxRuntimeException("Unsupported audio format: " + file);
+            }
+        } catch (IOException | BitstreamException e) {
+            throw new GdxRuntimeException("Error decoding " + file, e);
+        }
+    }
+
+    private void decodeMp3(FileHandle file) throws BitstreamException {
+        Bitstream bitstream = new Bitstream(file.read(65536));
+        MP3Decoder decoder = new MP3Decoder();
+        OutputBuffer output = null;
+        int channels = 0;
+        try {
+            while (true) {
+                Header header = bitstream.readFrame();
+                if (header == null)
+                    break;
+                if (output == null) {
+                    channels = header.mode() == Header.SINGLE_CHANNEL ? 1 : 2;
+                    output = new OutputBuffer(channels, false);
+                    decoder.setOutputBuffer(output);
+                    sampleRate = header.frequency();
+                }
+                try {
+                    decoder.decodeFrame(header, bitstream);
+                } catch (DecoderException ignored) {
+                    // поврежденный кадр пропускается, как это делает LibGDX
+                }
+                bitstream.closeFrame();
+                appendPcm(output.getBuffer(), output.reset(), channels);
+            }
+        } finally {
+            bitstream.close();
+        }
+    }
+
+    private void decodeOgg(FileHandle file) throws IOException {
+        try (OggInputStream input = new OggInputStream(file.read(65536))) {
+            sampleRate = input.getSampleRate();
+            int channels = input.getChannels();
+            byte[] buffer = new byte[65536];
+            int read;
+            while ((read = input.read(buffer)) > 0)
+                appendPcm(buffer, read, channels);
+        }
+    }
+
+    private void decodeWav(FileHandle file) throws IOException {
+        byte[] bytes = file.readBytes();
+        ByteBuffer buffer = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        if (buffer.getInt(0) != 0x46464952 || buffer.getInt(8) != 0x45564157) // "RIFF", "WAVE"
+            throw new GdxRuntimeException("Not a WAV file: " + file);
+
+        int channels = 0;
+        int position = 12;
+        while (position + 8 <= bytes.length) {
+            int id = buffer.getInt(position);
+            int length = buffer.getInt(position + 4);
+            position += 8;
+            if (id == 0x20746D66) { // "fmt "
+                if (buffer.getShort(position) != 1 || buffer.getShort(position + 14) != 16)
+                    throw new GdxRuntimeException("Only 16-bit PCM WAV files are supported: " + file);
+                channels = buffer.getShort(position + 2);
+                sampleRate = buffer.getInt(position + 4);
+            } else if (id == 0x61746164) { // "data"
+                if (channels == 0)
+                    throw new GdxRuntimeException("WAV data before format: " + file);
+                byte[] data = Arrays.copyOfRange(bytes, position, Math.min(bytes.length, position + length));
+                appendPcm(data, data.length, channels);
+                return;
+            }
+            position += length + (length & 1);
+        }
+        throw new GdxRuntimeException("No WAV data: " + file);
+    }
+
+    /**
+     * Добавляет 16-битный PCM (little-endian), сводя каналы в моно.
+     */
+    private void appendPcm(byte[] pcm, int length, int channels) {
+        int frameSize = 2 * channels;
+        int frames = length / frameSize;
+        if (sampleCount + frames > samples.length)
+            samples = Arrays.copyOf(samples, Math.max(samples.length * 2, sampleCount + frames));
+
+        for (int frame = 0; frame < frames; frame++) {
+            int offset = frame * frameSize;
+            int sum = 0;
+            for (int channel = 0; channel < channels; channel++, offset += 2)
+                sum += (short) ((pcm[offset] & 0xFF) | (pcm[offset + 1] << 8));
+            samples[sampleCount++] = sum / (32768f * channels);
+        }
+    }
+
+    /**
+     * @return сэмплы; действительны первые {@link #getSampleCount()}
+     */
+    public float[] getSamples() {
+        return samples;
+    }
+
+    public int getSampleCount() {
+        return sampleCount;
+    }
+
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    /**
+     * @return длительность музыки в секундах
+     */
+    public float getDuration() {
+        return sampleRate == 0 ? 0 : sampleCount / (float) sampleRate;
+    }
+}
@@ -0,0 +1,125 @@
+package org.ishgame.chartgen;
+
+import com.badlogic.gdx.files.FileHandle;
+import com.badlogic.gdx.utils.FloatArray;
+import org.ishgame.LaneLayout;
+import org.ishgame.SongData;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Консольная утилита, которая создает уровень по музыке: музыка декодируется ({@link AudioDecoder}),
+ * в ней ищутся начала звуков ({@link OnsetDetector}), и каждое становится нотой дорожки своей полосы частот
+ * (низкие частоты - левые клавиши, высокие - правые). Уровень записывается в обычном формате .key
+ * с раскладкой клавиш в заголовке.
+ * <br>
+ * {@code ChartGenerator [--keys A,S,D,F] [--sensitivity 1.5] [--gap 0.25] [--threads n] <музыка> [<уровень.key>]}
+ * <br>
+ * Путь к музыке записывается в уровень как есть, поэтому его нужно задавать относительно папки assets
+ * (так запускает задача gradlew chartgen:generateChart). По умолчанию уровень сохраняется
+ * в Levels/<имя музыки>-auto.key.
+ */
+public class ChartGenerator {
+
+    private static final String USAGE = "Usage: ChartGenerator [--keys A,S,D,F] [--sensitivity 1.5] [--gap 0.25]"
+            + " [--threads n] <music.mp3|ogg|wav> [<chart.key>]";
+    // ноты ближе этого промежутка считаются одним аккордом, в секундах
+    private static final float CHORD_WINDOW = 0.05f;
+    private static final int MAX_CHORD = 2;
+
+    public static void main(String[] args) {
+        String[] keys = LaneLayout.DEFAULT_KEYS.split(",");
+        float sensitivity = 1.5f;
+        float gap = 0.25f;
+        int threads = Runtime.getRuntime().availableProcessors();
+        String musicPath = null;
+        String chartPath = null;
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--keys":
+                    keys = args[++i].split(",");
+                    break;
+                case "--sensitivity":
+                    sensitivity = Float.parseFloat(args[++i]);
+                    break;
+                case "--gap":
+                    gap = Float.parseFloat(args[++i]);
+                    break;
+                case "--threads":
+                    threads = Integer.parseInt(args[++i]);
+                    break;
+                default:
+                    if (musicPath == null)
+                        musicPath = args[i];
+                    else
+                        chartPath = args[i];
+            }
+        }
+
+        if (musicPath == null) {
+            System.out.println(USAGE);
+            return;
+        }
+        // проверяет количество и названия клавиш так же, как игра
+        LaneLayout layout = new LaneLayout(keys);
+
+        FileHandle music = new FileHandle(musicPath);
+        FileHandle chart = chartPath != null ? new FileHandle(chartPath)
+                : new FileHandle("Levels").child(music.nameWithoutExtension() + "-auto.key");
+
+        long start = System.nanoTime();
+        AudioDecoder decoder = new AudioDecoder();
+        decoder.decode(music);
+        long decoded = System.nanoTime();
+
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        FloatArray[] onsets;
+        try {
+            OnsetDetector detector = new OnsetDetector(layout.size(), decoder.getSampleRate(), sensitivity, gap);
+            onsets = detector.detect(decoder.getSamples(), decoder.getSampleCount(), pool);
+        } finally {
+            pool.shutdown();
+        }
+        long analyzed = System.nanoTime();
+
+        SongData songData = new SongData();
+        songData.setSongName(musicPath.replace('\\', '/'));
+        songData.setSongDuration(decoder.getDuration());
+        songData.declareLanes(layout.getKeyNames());
+        addNotesInOrder(songData, onsets);
+        songData.writeToFile(chart);
+
+        System.out.println(music.name() + " -> " + chart.path() + ": " + songData.keyTimeCount() + " notes, "
+                + decoder.getDuration() + " s of audio; decoded in " + (decoded - start) / 1_000_000 + " ms, analyzed in "
+                + (analyzed - decoded) / 1_000_000 + " ms on " + threads + " threads");
+    }
+
+    /**
+     * Сливает начала звуков всех полос в один список нот по времени (как того требует {@link SongData}).
+     * Громкий удар дает начало звука сразу во всех полосах, поэтому в аккорд попадает не больше
+     * {@link #MAX_CHORD} нот, остальные отбрасываются.
+     */
+    private static void addNotesInOrder(SongData songData, FloatArray[] onsets) {
+        int[] next = new int[onsets.length];
+        float chordTime = Float.NEGATIVE_INFINITY;
+        int chordSize = 0;
+        while (true) {
+            int lane = -1;
+            for (int i = 0; i < onsets.length; i++) {
+                if (next[i] < onsets[i].size && (lane < 0 || onsets[i].get(next[i]) < onsets[lane].get(next[lane])))
+                    lane = i;
+            }
+            if (lane < 0)
+                return;
+
+            float time = onsets[lane].get(next[lane]++);
+            if (time - chordTime > CHORD_WINDOW) {
+                chordTime = time;
+                chordSize = 0;
+            }
+            if (chordSize++ < MAX_CHORD)
+                songData.addNote(lane, time);
+        }
+    }
+}
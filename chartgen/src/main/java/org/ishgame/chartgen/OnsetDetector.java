@@ -0,0 +1,237 @@
+package org.ishgame.chartgen;
+
+import com.badlogic.gdx.utils.FloatArray;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Поиск начал звуков (onset) по спектральному потоку (spectral flux).
+ * <br>
+ * Музыка режется на перекрывающиеся кадры по {@link #FRAME_SIZE} сэмплов с шагом {@link #HOP}, для каждого кадра
+ * считается спектр (БПФ с окном Ханна). Спектр делится на полосы с логарифмическим шагом по частоте,
+ * по одной на дорожку; поток полосы - сумма роста амплитуд ее частот относительно предыдущего кадра.
+ * Кадры считаются параллельно кусками по {@link #CHUNK_FRAMES} в ForkJoinPool: каждому куску нужен только
+ * свой отрезок сэмплов и один предыдущий кадр, поэтому куски не зависят друг от друга.
+ * Начало звука - локальный максимум потока выше скользящего среднего, умноженного на чувствительность.
+ */
+public class OnsetDetector {
+
+    public static final int FRAME_SIZE = 1024;
+    public static final int HOP = 512;
+    private static final int CHUNK_FRAMES = 256;
+
+    // границы частот, по которым строятся полосы
+    private static final float MIN_FREQUENCY = 40;
+    private static final float MAX_FREQUENCY = 10000;
+    // сжатие амплитуд перед сравнением кадров, чтобы тихие инструменты тоже давали начала звуков
+    private static final float COMPRESSION = 100;
+    // полуширина окна скользящего среднего и окна локального максимума в кадрах
+    private static final int AVERAGE_RADIUS = 12;
+    private static final int PEAK_RADIUS = 3;
+
+    private final int bandCount;
+    private final int sampleRate;
+    private final float sensitivity;
+    // наименьший промежуток между нотами одной дорожки в секундах
+    private final float minGap;
+
+    // общие для всех потоков таблицы: окно, поворотные множители БПФ и перестановка бит
+    private final float[] window;
+    private final float[] cos;
+    private final float[] sin;
+    private final int[] reversed;
+    // номер полосы -> первая частота (индекс в спектре); последний элемент - конец последней полосы
+    private final int[] bandBins;
+
+    /**
+     * @param bandCount   количество полос (дорожек)
+     * @param sampleRate  частота дискретизации
+     * @param sensitivity во сколько раз поток должен превышать скользящее среднее; чем больше, тем меньше нот
+     * @param minGap      наименьший промежуток между нотами одной дорожки в секундах
+     */
+    public OnsetDetector(int bandCount, int sampleRate, float sensitivity, float minGap) {
+        this.bandCount = bandCount;
+        this.sampleRate = sampleRate;
+        this.sensitivity = sensitivity;
+        this.minGap = minGap;
+
+        window = new float[FRAME_SIZE];
+        for (int i = 0; i < FRAME_SIZE; i++)
+            window[i] = (float) (0.5 - 0.5 * Math.cos(2 * Math.PI * i / FRAME_SIZE));
+
+        cos = new float[FRAME_SIZE / 2];
+        sin = new float[FRAME_SIZE / 2];
+        for (int i = 0; i < FRAME_SIZE / 2; i++) {
+            cos[i] = (float) Math.cos(-2 * Math.PI * i / FRAME_SIZE);
+            sin[i] = (float) Math.sin(-2 * Math.PI * i / FRAME_SIZE);
+        }
+
+        int bits = Integer.numberOfTrailingZeros(FRAME_SIZE);
+        reversed = new int[FRAME_SIZE];
+        for (int i = 0; i < FRAME_SIZE; i++)
+            reversed[i] = Integer.reverse(i) >>> (32 - bits);
+
+        bandBins = new int[bandCount + 1];
+        float maxFrequency = Math.min(MAX_FREQUENCY, sampleRate / 2f);
+        for (int band = 0; band <= bandCount; band++) {
+            double frequency = MIN_FREQUENCY * Math.pow(maxFrequency / MIN_FREQUENCY, band / (double) bandCount);
+            int bin = (int) Math.round(frequency * FRAME_SIZE / sampleRate);
+            bandBins[band] = band == 0 ? Math.max(bin, 1) : Math.max(bin, bandBins[band - 1] + 1);
+        }
+    }
+
+    /**
+     * Находит начала звуков в каждой полосе.
+     *
+     * @param samples     моно-сэмплы
+     * @param sampleCount количество сэмплов
+     * @param pool        пул потоков для расчета спектров
+     * @return время начал звуков в секундах по полосам, в порядке возрастания
+     */
+    public FloatArray[] detect(float[] samples, int sampleCount, ForkJoinPool pool) {
+        int frameCount = sampleCount < FRAME_SIZE ? 0 : (sampleCount - FRAME_SIZE) / HOP + 1;
+        float[][] flux = new float[bandCount][frameCount];
+        pool.invoke(new FluxTask(samples, flux, 0, frameCount));
+
+        FloatArray[] onsets = new FloatArray[bandCount];
+        for (int band = 0; band < bandCount; band++)
+            onsets[band] = pickPeaks(flux[band]);
+        return onsets;
+    }
+
+    /**
+     * Считает поток всех полос для отрезка кадров; большие отрезки делятся пополам.
+     */
+    private final class FluxTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final float[] samples;
+        private final float[][] flux;
+        private final int from;
+        private final int to;
+
+        FluxTask(float[] samples, float[][] flux, int from, int to) {
+            this.samples = samples;
+            this.flux = flux;
+            this.from = from;
+            this.to = to;
+        }
+
+        protected void compute() {
+            if (to - from > CHUNK_FRAMES) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new FluxTask(samples, flux, from, middle), new FluxTask(samples, flux, middle, to));
+                return;
+            }
+
+            float[] real = new float[FRAME_SIZE];
+            float[] imaginary = new float[FRAME_SIZE];
+            float[] previous = new float[FRAME_SIZE / 2];
+            float[] current = new float[FRAME_SIZE / 2];
+
+            // первый кадр куска сравнивается с последним кадром предыдущего куска
+            if (from > 0)
+                spectrum(samples, from - 1, real, imaginary, previous);
+
+            for (int frame = from; frame < to; frame++) {
+                spectrum(samples, frame, real, imaginary, current);
+                for (int band = 0; band < bandCount; band++) {
+                    float sum = 0;
+                    for (int bin = bandBins[band]; bin < bandBins[band + 1]; bin++) {
+                        float rise = current[bin] - previous[bin];
+                        if (rise > 0)
+                            sum += rise;
+                    }
+                    flux[band][frame] = frame == 0 ? 0 : sum;
+                }
+
+                float[] swap = previous;
+                previous = current;
+                current = swap;
+            }
+        }
+    }
+
+    /**
+     * Считает сжатые амплитуды спектра кадра.
+     */
+    private void spectrum(float[] samples, int frame, float[] real, float[] imaginary, float[] magnitudes) {
+        int start = frame * HOP;
+        for (int i = 0; i < FRAME_SIZE; i++) {
+            int j = reversed[i];
+            real[j] = samples[start + i] * window[i];
+            imaginary[j] = 0;
+        }
+
+        // БПФ по основанию 2 на месте
+        for (int size = 2; size <= FRAME_SIZE; size <<= 1) {
+            int half = size >> 1;
+            int step = FRAME_SIZE / size;
+            for (int block = 0; block < FRAME_SIZE; block += size) {
+                for (int k = 0; k < half; k++) {
+                    float wr = cos[k * step];
+                    float wi = sin[k * step];
+                    int even = block + k;
+                    int odd = even + half;
+                    float tr = real[odd] * wr - imaginary[odd] * wi;
+                    float ti = real[odd] * wi + imaginary[odd] * wr;
+                    real[odd] = real[even] - tr;
+                    imaginary[odd] = imaginary[even] - ti;
+                    real[even] += tr;
+                    imaginary[even] += ti;
+                }
+            }
+        }
+
+        // амплитуды нужны только для частот внутри полос; Math.log быстрее Math.log1p
+        for (int bin = bandBins[0]; bin < bandBins[bandCount]; bin++) {
+            float magnitude = (float) Math.sqrt(real[bin] * real[bin] + imaginary[bin] * imaginary[bin]);
+            magnitudes[bin] = (float) Math.log(1 + COMPRESSION * magnitude);
+        }
+    }
+
+    /**
+     * Выбирает в потоке полосы локальные максимумы выше скользящего среднего.
+     */
+    private FloatArray pickPeaks(float[] flux) {
+        int frameCount = flux.length;
+        double[] prefix = new double[frameCount + 1];
+        double total = 0;
+        for (int i = 0; i < frameCount; i++) {
+            prefix[i + 1] = prefix[i] + flux[i];
+            total += flux[i];
+        }
+        // без этого порога тишина с шумом дает ноты
+        float floor = frameCount == 0 ? 0 : (float) (total / frameCount) * 0.5f;
+
+        FloatArray onsets = new FloatArray();
+        float lastTime = Float.NEGATIVE_INFINITY;
+        for (int frame = 0; frame < frameCount; frame++) {
+            float value = flux[frame];
+            int from = Math.max(0, frame - AVERAGE_RADIUS);
+            int to = Math.min(frameCount, frame + AVERAGE_RADIUS + 1);
+            float average = (float) ((prefix[to] - prefix[from]) / (to - from));
+            if (value <= average * sensitivity || value <= floor)
+                continue;
+
+            boolean peak = true;
+            for (int i = Math.max(0, frame - PEAK_RADIUS); i <= Math.min(frameCount - 1, frame + PEAK_RADIUS); i++) {
+                if (flux[i] > value || (flux[i] == value && i < frame)) {
+                    peak = false;
+                    break;
+                }
+            }
+            if (!peak)
+                continue;
+
+            float time = (frame * HOP + FRAME_SIZE / 2f) / sampleRate;
+            if (time - lastTime < minGap)
+                continue;
+            onsets.add(time);
+            lastTime = time;
+        }
+        return onsets;
+    }
+}
@@ -0,0 +1,121 @@
+package org.ishgame;
+
+import com.badlogic.gdx.scenes.scene2d.Stage;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.ObjectMap;
+
+/**
+ * Списки BaseActor'ов одной сцены по классам.
+ * BaseActor заносит себя в реестр, когда попадает на сцену, и убирает себя, когда покидает ее,
+ * поэтому запрос списка или количества не обходит сцену, не использует рефлексию и не создает мусора.
+ * Actor числится в списках своего класса и всех его суперклассов вплоть до BaseActor
+ * и помнит свое место в каждом из них, поэтому убирается из списков за постоянное время.
+ * <br>
+ * Реестры хранятся в общей таблице по сцене, а не в самой сцене, чтобы не занимать ее user object;
+ * реестр сцены освобождается методом {@link #release(Stage)} (BaseScreen делает это в dispose).
+ * Все методы должны вызываться из потока рендера.
+ */
+public final class ActorRegistry {
+
+    // Stage не переопределяет equals и hashCode, поэтому сцены сравниваются по ссылке
+    private static final ObjectMap<Stage, ActorRegistry> registries = new ObjectMap<>();
+
+    private final ObjectMap<Class<?>, Array<BaseActor>> lists = new ObjectMap<>();
+
+    private ActorRegistry() {
+    }
+
+    /**
+     * @param stage сцена
+     * @return реестр этой сцены; создается при первом обращении
+     */
+    public static ActorRegistry of(Stage stage) {
+        ActorRegistry registry = registries.get(stage);
+        if (registry == null) {
+            registry = new ActorRegistry();
+            registries.put(stage, registry);
+        }
+        return registry;
+    }
+
+    /**
+     * Забывает реестр сцены; вызывается, когда сцена больше не нужна.
+     *
+     * @param stage сцена
+     */
+    public static void release(Stage stage) {
+        registries.remove(stage);
+    }
+
+    /**
+     * Возвращает всех Actor'ов сцены заданного класса (и его подклассов).
+     * Список принадлежит реестру и меняется, когда Actor'ы добавляются на сцену или убираются с нее;
+     * изменять его нельзя, а для обхода, во время которого Actor'ы могут покидать сцену, его нужно скопировать.
+     *
+     * @param type класс, который расширяет BaseActor
+     * @return список Actor'ов; пустой, если таких Actor'ов на сцене нет
+     */
+    @SuppressWarnings("unchecked")
+    public <T extends BaseActor> Array<T> getActors(Class<T> type) {
+        return (Array<T>) listOf(type);
+    }
+
+    /**
+     * @param type класс, который расширяет BaseActor
+     * @return количество Actor'ов сцены заданного класса (и его подклассов)
+     */
+    public int count(Class<? extends BaseActor> type) {
+        Array<BaseActor> list = lists.get(type);
+        return list == null ? 0 : list.size;
+    }
+
+    // Место Actor'а в списке класса хранится в actor.registryIndices под номером уровня этого класса
+    // (BaseActor - 0, его подкласс - 1 и т.д.). Уровень класса один и тот же у всех Actor'ов его списка.
+
+    void add(BaseActor actor) {
+        int level = levelOf(actor.getClass());
+        if (actor.registryIndices == null || actor.registryIndices.length != level + 1)
+            actor.registryIndices = new int[level + 1];
+
+        for (Class<?> type = actor.getClass(); level >= 0; type = type.getSuperclass(), level--) {
+            Array<BaseActor> list = listOf(type);
+            actor.registryIndices[level] = list.size;
+            list.add(actor);
+        }
+    }
+
+    /**
+     * Убирает Actor'а из списков: на его место переносится последний Actor списка.
+     */
+    void remove(BaseActor actor) {
+        int level = actor.registryIndices.length - 1;
+        for (Class<?> type = actor.getClass(); level >= 0; type = type.getSuperclass(), level--) {
+            Array<BaseActor> list = lists.get(type);
+            int index = actor.registryIndices[level];
+            BaseActor last = list.pop();
+            if (last != actor) {
+                list.set(index, last);
+                last.registryIndices[level] = index;
+            }
+        }
+    }
+
+    /**
+     * @return сколько суперклассов отделяет класс от BaseActor
+     */
+    private static int levelOf(Class<?> type) {
+        int level = 0;
+        for (; type != BaseActor.class; type = type.getSuperclass())
+            level++;
+        return level;
+    }
+
+    private Array<BaseActor> listOf(Class<?> type) {
+        Array<BaseActor> list = lists.get(type);
+        if (list == null) {
+            list = new Array<>(false, 16);
+            lists.put(type, list);
+        }
+        return list;
+    }
+}
@@ -1,10 +1,7 @@
 package org.ishgame;
 
-import com.badlogic.gdx.Gdx;
 import com.badlogic.gdx.graphics.Camera;
 import com.badlogic.gdx.graphics.Color;
-import com.badlogic.gdx.graphics.Texture;
-import com.badlogic.gdx.graphics.Texture.TextureFilter;
 import com.badlogic.gdx.graphics.g2d.Animation;
 import com.badlogic.gdx.graphics.g2d.Batch;
 import com.badlogic.gdx.graphics.g2d.TextureRegion;
@@ -14,19 +11,16 @@ import com.badlogic.gdx.math.MathUtils;
 import com.badlogic.gdx.math.Polygon;
 import com.badlogic.gdx.math.Rectangle;
 import com.badlogic.gdx.math.Vector2;
-import com.badlogic.gdx.scenes.scene2d.Actor;
 import com.badlogic.gdx.scenes.scene2d.Group;
 import com.badlogic.gdx.scenes.scene2d.Stage;
 import com.badlogic.gdx.utils.Array;
 import com.badlogic.gdx.utils.viewport.Viewport;
 
-import java.util.ArrayList;
-
 /**
  * Расширяет функциональность класса Actor из LibGDX.
  * Добавляет поддержку текстур/анимаций,
  * движения, границ мира, и прокрутки камеры.
- * Большинство игровых объектов должны расширять этот класс; списки расширений можно получить по названию этапа и класса.
+ * Большинство игровых объектов должны расширять этот класс; списки расширений можно получить по сцене и классу.
  *
  * @author Lee Stemkoski
  * @see #Actor
@@ -34,6 +28,7 @@ import java.util.ArrayList;
 public class BaseActor extends Group { //Класс, заимствованный у Ли Стемкоски, расширяет функциональность класса Actor из LibGDX.
 
     private Animation<TextureRegion> animation;
+    private Array<Animation<TextureRegion>> loadedAnimations;
     private float elapsedTime;
     private boolean animationPaused;
 
@@ -45,6 +40,9 @@ public class BaseActor extends Group { //Класс, заимствованны
 
     private Polygon boundaryPolygon;
 
+    // места этого Actor'а в списках реестра сцены (ActorRegistry) по уровням класса
+    int[] registryIndices;
+
     // сохраняет размер игрового мира для всех экземпляров класса Actor
     private static Rectangle worldBounds;
 
@@ -58,6 +56,7 @@ public class BaseActor extends Group { //Класс, заимствованны
 
         // инициализация данных анимации
         animation = null;
+        loadedAnimations = new Array<>();
         elapsedTime = 0;
         animationPaused = false;
 
@@ -132,6 +131,7 @@ public class BaseActor extends Group { //Класс, заимствованны
 
     /**
      * Создает анимацию из изображений, которые сохранены в разных файлах.
+     * Текстуры и сама анимация берутся из общего кэша {@link TextureCache}.
      *
      * @param fileNames     список имен файлов, содержащих изображения анимации
      * @param frameDuration как долго каждый кадр должен быть отображен
@@ -139,21 +139,8 @@ public class BaseActor extends Group { //Класс, заимствованны
      * @return возвращает созданную анимацию (полезно для сохранения нескольких анимаций)
      */
     public Animation<TextureRegion> loadAnimationFromFiles(String[] fileNames, float frameDuration, boolean loop) {
-        int fileCount = fileNames.length;
-        Array<TextureRegion> textureArray = new Array<>();
-
-        for (int n = 0; n < fileCount; n++) {
-            String fileName = fileNames[n];
-            Texture texture = new Texture(Gdx.files.internal(fileName));
-            texture.setFilter(TextureFilter.Linear, TextureFilter.Linear);
-            textureArray.add(new TextureRegion(texture));
-        }
-
-        Animation<TextureRegion> animation = new Animation<>(frameDuration, textureArray);
-        animation.setPlayMode(Animation.PlayMode.NORMAL);
-
-        if (loop)
-            animation.setPlayMode(Animation.PlayMode.LOOP);
+        Animation<TextureRegion> animation = TextureCache.obtainAnimationFromFiles(fileNames, frameDuration, loop);
+        loadedAnimations.add(animation);
 
         if (this.animation == null)
             setAnimation(animation);
@@ -163,6 +150,7 @@ public class BaseActor extends Group { //Класс, заимствованны
 
     /**
      * Создает анимацию из спрайт-листа: прямоугольной сетки изображений, хранящихся в одном файле..
+     * Текстура и сама анимация берутся из общего кэша {@link TextureCache}.
      *
      * @param fileName      имя файла, содержащего спрайт-лист
      * @param rows          количество строк изображений в спрайт-листе
@@ -172,24 +160,8 @@ public class BaseActor extends Group { //Класс, заимствованны
      * @return возвращает созданную анимацию (полезно для сохранения нескольких анимаций)
      */
     public Animation<TextureRegion> loadAnimationFromSheet(String fileName, int rows, int cols, float frameDuration, boolean loop) {
-        Texture texture = new Texture(Gdx.files.internal(fileName), true);
-        texture.setFilter(TextureFilter.Linear, TextureFilter.Linear);
-        int frameWidth = texture.getWidth() / cols;
-        int frameHeight = texture.getHeight() / rows;
-
-        TextureRegion[][] temp = TextureRegion.split(texture, frameWidth, frameHeight);
-
-        Array<TextureRegion> textureArray = new Array<>();
-
-        for (int r = 0; r < rows; r++)
-            for (int c = 0; c < cols; c++)
-                textureArray.add(temp[r][c]);
-
-        Animation<TextureRegion> animation = new Animation<>(frameDuration, textureArray);
-        animation.setPlayMode(Animation.PlayMode.NORMAL);
-
-        if (loop)
-            animation.setPlayMode(Animation.PlayMode.LOOP);
+        Animation<TextureRegion> animation = TextureCache.obtainAnimationFromSheet(fileName, rows, cols, frameDuration, loop);
+        loadedAnimations.add(animation);
 
         if (this.animation == null)
             setAnimation(animation);
@@ -209,6 +181,18 @@ public class BaseActor extends Group { //Класс, заимствованны
         return loadAnimationFromFiles(fileNames, 1, true);
     }
 
+    /**
+     * Возвращает в кэш все анимации, загруженные этим Actor'ом.
+     * После вызова Actor ничего не рисует, пока не будет загружена новая анимация.
+     */
+    public void releaseAnimations() {
+        for (Animation<TextureRegion> loaded : loadedAnimations)
+            TextureCache.releaseAnimation(loaded);
+
+        loadedAnimations.clear();
+        animation = null;
+    }
+
     /**
      * Установка состояние паузы анимации.
      *
@@ -571,43 +555,45 @@ public class BaseActor extends Group { //Класс, заимствованны
     // ----------------------------------------------
 
     /**
-     * Извлекает список всех экземпляров объекта с заданного этапа с заданным именем класса
-     * или чей класс расширяет класс с заданным именем.
-     * Если экземпляров не существует, возвращается пустой список.
+     * Возвращает список всех экземпляров заданного класса (или его подклассов) на заданной сцене.
+     * Список берется из реестра сцены {@link ActorRegistry}, поэтому вызов не обходит сцену и не создает мусора;
+     * если экземпляров не существует, возвращается пустой список.
      * Полезно при кодировании взаимодействия между различными типами игровых объектов в методе update.
      *
-     * @param stage     Сцена (Stage), содержащая экземпляры BaseActor
-     * @param className имя класса, который расширяет класс BaseActor
-     * @return возвращает список экземпляров объекта на этапе, которые расширяются с помощью заданного имени класса
+     * @param stage Сцена (Stage), содержащая экземпляры BaseActor
+     * @param type  класс, который расширяет класс BaseActor
+     * @return список экземпляров класса на сцене; изменять его нельзя
      */
-    public static ArrayList<BaseActor> getList(Stage stage, String className) {
-
-        ArrayList<BaseActor> list = new ArrayList<>();
-
-        Class theClass = null;
-
-        try {
-            theClass = Class.forName(className);
-        } catch (Exception error) {
-            error.printStackTrace();
-        }
-
-        for (Actor a : stage.getActors()) {
-            if (theClass.isInstance(a))
-                list.add((BaseActor) a);
-        }
-
-        return list;
+    public static <T extends BaseActor> Array<T> getList(Stage stage, Class<T> type) {
+        return ActorRegistry.of(stage).getActors(type);
     }
 
     /**
      * Возвращает количество экземпляров заданного класса (который расширяет BaseActor).
      *
-     * @param className имя класса, который расширяет класс BaseActor
+     * @param stage Сцена (Stage), содержащая экземпляры BaseActor
+     * @param type  класс, который расширяет класс BaseActor
      * @return количество экземпляров класса
      */
-    public static int count(Stage stage, String className) {
-        return getList(stage, className).size();
+    public static int count(Stage stage, Class<? extends BaseActor> type) {
+        return ActorRegistry.of(stage).count(type);
+    }
+
+    /**
+     * Вызывается, когда Actor (или группа, в которой он находится) добавляется на сцену или убирается с нее;
+     * поддерживает реестр сцены {@link ActorRegistry}.
+     *
+     * @param stage новая сцена или null, если Actor убран со сцены
+     */
+    protected void setStage(Stage stage) {
+        Stage oldStage = getStage();
+        if (oldStage != stage) {
+            if (oldStage != null)
+                ActorRegistry.of(oldStage).remove(this);
+            if (stage != null)
+                ActorRegistry.of(stage).add(this);
+        }
+        super.setStage(stage);
     }
 
     // ----------------------------------------------
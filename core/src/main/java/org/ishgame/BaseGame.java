@@ -4,7 +4,6 @@ import com.badlogic.gdx.Game;
 import com.badlogic.gdx.Gdx;
 import com.badlogic.gdx.InputMultiplexer;
 import com.badlogic.gdx.graphics.Color;
-import com.badlogic.gdx.graphics.Texture;
 import com.badlogic.gdx.graphics.Texture.TextureFilter;
 import com.badlogic.gdx.graphics.g2d.BitmapFont;
 import com.badlogic.gdx.graphics.g2d.NinePatch;
@@ -26,11 +25,27 @@ public abstract class BaseGame extends Game {
     public static LabelStyle labelStyle;
     public static TextButtonStyle textButtonStyle;
 
+    /**
+     * Нажатия клавиш с моментом их получения от оконной системы;
+     * null, если платформа не поддерживает перехват клавиш ({@link KeyCapture}).
+     */
+    public static KeyEventQueue keyEvents;
+
+    private final KeyCapture keyCapture;
+
     /**
      * Вызывается при инициализации игры; сохраняет глобальную ссылку на игровой объект.
      */
     public BaseGame() {
+        this(null);
+    }
+
+    /**
+     * @param keyCapture платформенный перехват клавиш или null
+     */
+    public BaseGame(KeyCapture keyCapture) {
         game = this;
+        this.keyCapture = keyCapture;
     }
 
     /**
@@ -42,6 +57,14 @@ public abstract class BaseGame extends Game {
         // подготовка для нескольких классов/стадий/акторов/ получения дискретных значений
         Gdx.input.setInputProcessor(new InputMultiplexer());
 
+        if (keyCapture != null) {
+            keyEvents = new KeyEventQueue(256);
+            keyCapture.start(keyEvents);
+        }
+
+        // спрайты берутся из общего атласа (задача packTextures), если он собран
+        TextureCache.loadAtlas("atlas/game.atlas");
+
         // параметры для геренации кастомного растрового шрифта
         FreeTypeFontGenerator fontGenerator = new FreeTypeFontGenerator(Gdx.files.internal("Bahnschrift.ttf"));
         FreeTypeFontGenerator.FreeTypeFontParameter fontParameters = new FreeTypeFontGenerator.FreeTypeFontParameter();
@@ -60,13 +83,24 @@ public abstract class BaseGame extends Game {
 
         textButtonStyle = new TextButtonStyle();
 
-        Texture buttonTex = new Texture(Gdx.files.internal("button.png"));
-        NinePatch buttonPatch = new NinePatch(buttonTex, 24, 24, 24, 24);
+        NinePatch buttonPatch = new NinePatch(TextureCache.obtainRegion("button.png"), 24, 24, 24, 24);
         textButtonStyle.up = new NinePatchDrawable(buttonPatch);
         textButtonStyle.font = customFont;
         textButtonStyle.fontColor = Color.GREEN;
     }
 
+    /**
+     * Вызывается при завершении игры; выгружает все текстуры из общего кэша.
+     */
+    public void dispose() {
+        super.dispose();
+        TextureCache.dispose();
+
+        if (keyCapture != null)
+            keyCapture.stop();
+        keyEvents = null;
+    }
+
     /**
      * Используется для смены экранов, когда игра запущена
      * Метод сделан статичным для упрощения использования.
@@ -66,7 +66,12 @@ public abstract class BaseScreen implements Screen, InputProcessor { //клас
     public void resume() {
     }
 
+    /**
+     * Освобождает реестры Actor'ов сцен экрана; экраны, которые переопределяют dispose, вызывают этот метод.
+     */
     public void dispose() {
+        ActorRegistry.release(mainStage);
+        ActorRegistry.release(uiStage);
     }
 
     public void show() {
@@ -0,0 +1,29 @@
+package org.ishgame;
+
+import com.badlogic.gdx.files.FileHandle;
+
+/**
+ * Консольная утилита, которая переводит текстовые уровни .key в двоичный формат .keyb.
+ * Каждый файл из аргументов записывается рядом с исходным, с тем же именем и расширением .keyb.
+ * Работает без запуска игры (файлы открываются по абсолютному пути).
+ */
+public class ChartConverter {
+
+    public static void main(String[] args) {
+        if (args.length == 0) {
+            System.out.println("Usage: ChartConverter <file.key>...");
+            return;
+        }
+
+        for (String path : args) {
+            FileHandle source = new FileHandle(path);
+            FileHandle target = source.sibling(source.nameWithoutExtension() + ".keyb");
+
+            SongData songData = new SongData();
+            songData.readFromFile(source);
+            songData.writeToBinaryFile(target);
+
+            System.out.println(source.name() + " -> " + target.name() + " (" + songData.keyTimeCount() + " notes)");
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package org.ishgame;
+
+import com.badlogic.gdx.assets.AssetDescriptor;
+import com.badlogic.gdx.assets.AssetLoaderParameters;
+import com.badlogic.gdx.assets.AssetManager;
+import com.badlogic.gdx.assets.loaders.AsynchronousAssetLoader;
+import com.badlogic.gdx.assets.loaders.FileHandleResolver;
+import com.badlogic.gdx.audio.Music;
+import com.badlogic.gdx.files.FileHandle;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.GdxRuntimeException;
+
+/**
+ * Загрузчик мелодий для AssetManager.
+ * Мелодия разбирается в фоновом потоке AssetManager, а музыка, указанная в заголовке мелодии,
+ * загружается как зависимость, так что поток рендера не блокируется.
+ * Формат выбирается по файлу: .keyb - двоичный, большие .key - потоковое чтение, остальные - обычный текстовый.
+ * Для мелодий, загруженных целиком, здесь же считается {@link ChartTimeline}, чтобы не делать этого в игре.
+ * <br>
+ * Параметр загрузки обязателен: сдвиг времени нот задает вызывающий код в потоке рендера,
+ * потому что фоновый поток AssetManager не должен читать Preferences, которые меняет экран калибровки.
+ */
+public class ChartLoader extends AsynchronousAssetLoader<NoteSource, ChartLoader.ChartParameter> {
+
+    // текстовые мелодии больше этого размера (в байтах) читаются потоково
+    public static final long STREAMING_THRESHOLD = 1 << 20;
+
+    private NoteSource chart;
+
+    public static class ChartParameter extends AssetLoaderParameters<NoteSource> {
+        // клавиши игры; используются при потоковом чтении для нумерации дорожек
+        public String[] laneNames;
+        // на сколько секунд вперед потоковое чтение держит ноты в памяти
+        public float streamingWindow = 6;
+        // сдвиг времени нот (задержка звука); в игре - из калибровки ({@link LatencySettings#getAudioOffset()})
+        public float timeOffset;
+    }
+
+    public ChartLoader(FileHandleResolver resolver) {
+        super(resolver);
+    }
+
+    public Array<AssetDescriptor> getDependencies(String fileName, FileHandle file, ChartParameter parameter) {
+        if (parameter == null)
+            throw new GdxRuntimeException("ChartParameter with the time offset is required to load " + fileName);
+        Array<AssetDescriptor> dependencies = new Array<>();
+        dependencies.add(new AssetDescriptor<>(SongData.readSongName(file), Music.class));
+        return dependencies;
+    }
+
+    public void loadAsync(AssetManager manager, String fileName, FileHandle file, ChartParameter parameter) {
+        float timeOffset = parameter.timeOffset;
+
+        if (file.extension().equals("keyb")) {
+            SongData data = new SongData();
+            data.setTimeOffset(timeOffset);
+            data.readFromBinaryFile(file);
+            chart = data;
+        } else if (file.length() > STREAMING_THRESHOLD && parameter.laneNames != null) {
+            chart = new StreamingChart(file, parameter.laneNames, parameter.streamingWindow, timeOffset);
+        } else {
+            SongData data = new SongData();
+            data.setTimeOffset(timeOffset);
+            data.readFromFile(file);
+            chart = data;
+        }
+
+        if (chart instanceof SongData)
+            chart.getTimeline();
+    }
+
+    public NoteSource loadSync(AssetManager manager, String fileName, FileHandle file, ChartParameter parameter) {
+        NoteSource result = chart;
+        chart = null;
+        return result;
+    }
+}
@@ -0,0 +1,206 @@
+package org.ishgame;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.files.FileHandle;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Запись новой мелодии во время игры музыки: каждое нажатие становится нотой.
+ * <br>
+ * Поток игры только добавляет ноту в примитивные массивы и в очередь {@link NoteQueue}.
+ * Фоновый поток раз в {@link #AUTOSAVE_INTERVAL} секунд дописывает новые ноты в файл автосохранения
+ * (имя мелодии + ".part") через один FileChannel и сбрасывает его на диск, так что при сбое теряются
+ * только последние секунды. По окончании записи фоновый поток записывает мелодию целиком
+ * ({@link SongData#writeToFile}: временный файл и переименование) и удаляет автосохранение.
+ * Если не записано ни одной ноты (например, запись прервана во время отсчета), мелодия не сохраняется.
+ * Файл автосохранения - тоже обычная мелодия .key, его можно открыть после сбоя.
+ */
+public class ChartRecorder {
+
+    // как часто ноты дописываются в файл автосохранения, в секундах
+    public static final float AUTOSAVE_INTERVAL = 2;
+    private static final int QUEUE_CAPACITY = 4096;
+    // длительность в автосохранении записывается в поле постоянной ширины и обновляется на месте
+    private static final int DURATION_WIDTH = 16;
+
+    private final FileHandle file;
+    private final FileHandle partFile;
+    private final String songName;
+    private final String[] laneNames;
+    private final NoteQueue queue;
+    private final Thread thread;
+
+    // все ноты записи; их пишет поток игры, а после finish читает фоновый поток
+    private byte[] lanes;
+    private float[] times;
+    private int count;
+
+    private volatile float duration;
+    private volatile boolean finished;
+    // ноты, которые не поместились в очередь, попадут только в итоговый файл
+    private volatile boolean autosaveIncomplete;
+
+    /**
+     * @param file      файл мелодии, который получится в конце записи
+     * @param songName  музыка мелодии (первая строка файла)
+     * @param laneNames клавиши дорожек слева направо
+     */
+    public ChartRecorder(FileHandle file, String songName, String[] laneNames) {
+        this.file = file;
+        this.songName = songName;
+        this.laneNames = laneNames.clone();
+        partFile = file.sibling(file.name() + ".part");
+        queue = new NoteQueue(QUEUE_CAPACITY);
+        lanes = new byte[1024];
+        times = new float[1024];
+
+        thread = new Thread(this::run, "chart-recorder " + file.name());
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Добавляет ноту.
+     *
+     * @param lane номер дорожки
+     * @param time время ноты в секундах (время мелодии без задержек звука и ввода)
+     */
+    public void tap(int lane, float time) {
+        if (finished)
+            return;
+
+        if (count == times.length) {
+            lanes = Arrays.copyOf(lanes, count * 2);
+            times = Arrays.copyOf(times, count * 2);
+        }
+        lanes[count] = (byte) lane;
+        times[count] = time;
+        count++;
+
+        if (queue.offer(lane, time))
+            queue.publish();
+        else
+            autosaveIncomplete = true;
+    }
+
+    public int getNoteCount() {
+        return count;
+    }
+
+    /**
+     * Заканчивает запись; мелодия записывается в фоне.
+     *
+     * @param songDuration длительность мелодии в секундах; отрицательная (запись прервана во время отсчета)
+     *                     считается нулевой
+     */
+    public void finish(float songDuration) {
+        if (finished)
+            return;
+        duration = Math.max(0, songDuration);
+        finished = true;
+        LockSupport.unpark(thread);
+    }
+
+    private void run() {
+        try (FileChannel channel = FileChannel.open(partFile.file().toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            writePartHeader(channel);
+
+            StringBuilder text = new StringBuilder();
+            while (true) {
+                LockSupport.parkNanos((long) (AUTOSAVE_INTERVAL * 1_000_000_000L));
+                // флаги читаются до очереди: после finish в очереди уже все ноты записи
+                boolean interrupted = Thread.interrupted();
+                boolean last = finished || interrupted;
+
+                float lastTime = -1;
+                text.setLength(0);
+                while (!queue.isEmpty()) {
+                    text.append(laneNames[queue.peekLane()]).append(',').append(queue.peekTime()).append('\n');
+                    lastTime = queue.peekTime();
+                    queue.poll();
+                }
+                if (text.length() > 0) {
+                    channel.write(ByteBuffer.wrap(text.toString().getBytes(StandardCharsets.UTF_8)));
+                    writePartDuration(channel, finished ? duration : lastTime);
+                    channel.force(false);
+                }
+
+                if (interrupted)
+                    return;
+                if (last)
+                    break;
+            }
+        } catch (IOException e) {
+            Gdx.app.error("ChartRecorder", "Autosave failed: " + partFile, e);
+        }
+
+        // если автосохранение сломалось раньше, итоговый файл все равно записывается по окончании записи
+        while (!finished) {
+            LockSupport.parkNanos((long) (AUTOSAVE_INTERVAL * 1_000_000_000L));
+            if (Thread.interrupted())
+                return;
+        }
+
+        // после finish поток игры больше не меняет массивы нот
+        if (count == 0) {
+            partFile.delete();
+            Gdx.app.log("ChartRecorder", "No notes recorded, " + file + " is not saved");
+            return;
+        }
+
+        SongData chart = new SongData();
+        chart.setSongName(songName);
+        chart.setSongDuration(duration);
+        chart.declareLanes(laneNames);
+        for (int i = 0; i < count; i++)
+            chart.addNote(lanes[i], times[i]);
+        chart.writeToFile(file);
+
+        if (autosaveIncomplete)
+            Gdx.app.log("ChartRecorder", "Autosave queue overflowed; notes were kept in memory");
+        partFile.delete();
+        Gdx.app.log("ChartRecorder", "Recorded " + count + " notes to " + file);
+    }
+
+    private void writePartHeader(FileChannel channel) throws IOException {
+        StringBuilder header = new StringBuilder();
+        header.append(songName).append('\n');
+        for (int i = 0; i < DURATION_WIDTH; i++)
+            header.append(' ');
+        header.append('\n').append(SongData.KEYS_HEADER);
+        for (int i = 0; i < laneNames.length; i++) {
+            if (i > 0)
+                header.append(',');
+            header.append(laneNames[i]);
+        }
+        header.append('\n');
+        channel.write(ByteBuffer.wrap(header.toString().getBytes(StandardCharsets.UTF_8)));
+        writePartDuration(channel, 0);
+    }
+
+    /**
+     * Обновляет длительность во второй строке автосохранения; пробелы вокруг числа при чтении отбрасываются.
+     */
+    private void writePartDuration(FileChannel channel, float value) throws IOException {
+        StringBuilder field = new StringBuilder(Float.toString(value));
+        while (field.length() < DURATION_WIDTH)
+            field.append(' ');
+        long position = songName.getBytes(StandardCharsets.UTF_8).length + 1;
+        channel.write(ByteBuffer.wrap(field.toString().getBytes(StandardCharsets.US_ASCII)), position);
+    }
+
+    /**
+     * Прерывает запись без сохранения итогового файла; автосохранение остается на диске.
+     */
+    public void dispose() {
+        thread.interrupt();
+    }
+}
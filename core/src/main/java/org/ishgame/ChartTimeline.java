@@ -0,0 +1,119 @@
+package org.ishgame;
+
+import org.ishgame.engine.Judgment;
+
+/**
+ * Сведения о мелодии, посчитанные один раз при загрузке: количество нот, наибольшие счет и комбо,
+ * гистограмма плотности нот по секундам и количество нот к любому моменту мелодии.
+ * Все запросы выполняются за постоянное время, поэтому их можно делать каждый кадр.
+ * <br>
+ * Строится по мелодии, загруженной целиком; ноты должны идти в порядке времени.
+ */
+public class ChartTimeline {
+
+    // шаг индекса по времени в секундах; внутри шага просматривается не больше нот, чем в нем есть
+    private static final float INDEX_STEP = 0.25f;
+
+    private final float[] times;
+    private final int noteCount;
+    // номер шага индекса -> количество нот раньше его начала
+    private final int[] notesBefore;
+    // номер секунды -> количество нот в ней
+    private final int[] density;
+    private final int peakDensity;
+
+    /**
+     * @param noteTimes время нот в порядке возрастания
+     * @param noteCount количество нот
+     */
+    public ChartTimeline(float[] noteTimes, int noteCount) {
+        this.noteCount = noteCount;
+        times = new float[noteCount];
+        System.arraycopy(noteTimes, 0, times, 0, noteCount);
+
+        float lastTime = noteCount > 0 ? Math.max(times[noteCount - 1], 0) : 0;
+
+        notesBefore = new int[(int) (lastTime / INDEX_STEP) + 2];
+        int note = 0;
+        for (int step = 0; step < notesBefore.length; step++) {
+            float start = step * INDEX_STEP;
+            while (note < noteCount && times[note] < start)
+                note++;
+            notesBefore[step] = note;
+        }
+
+        density = new int[(int) lastTime + 1];
+        int peak = 0;
+        for (int i = 0; i < noteCount; i++) {
+            if (times[i] < 0)
+                continue;
+            int second = (int) times[i];
+            density[second]++;
+            peak = Math.max(peak, density[second]);
+        }
+        peakDensity = peak;
+    }
+
+    public int getNoteCount() {
+        return noteCount;
+    }
+
+    /**
+     * @return счет, если все ноты оценены как PERFECT
+     */
+    public int getMaxScore() {
+        return noteCount * Judgment.PERFECT.points;
+    }
+
+    public int getMaxCombo() {
+        return noteCount;
+    }
+
+    /**
+     * @param time время мелодии в секундах
+     * @return количество нот, время которых не позже заданного
+     */
+    public int notesUntil(float time) {
+        int step = (int) Math.floor(time / INDEX_STEP);
+        if (step >= notesBefore.length)
+            return noteCount;
+
+        // ноты с отрицательным временем (до начала музыки) не попадают в индекс и просматриваются с начала
+        int note = step < 0 ? 0 : notesBefore[step];
+        while (note < noteCount && times[note] <= time)
+            note++;
+        return note;
+    }
+
+    /**
+     * @param time время мелодии в секундах
+     * @return наибольший счет, который можно набрать на нотах до заданного момента
+     */
+    public int getMaxScoreAt(float time) {
+        return notesUntil(time) * Judgment.PERFECT.points;
+    }
+
+    /**
+     * @param time время мелодии в секундах
+     * @return количество нот в секунде, на которую приходится заданный момент
+     */
+    public int getDensityAt(float time) {
+        if (time < 0 || time >= density.length)
+            return 0;
+        return density[(int) time];
+    }
+
+    /**
+     * @return наибольшее количество нот в одной секунде
+     */
+    public int getPeakDensity() {
+        return peakDensity;
+    }
+
+    /**
+     * @return количество секунд в гистограмме плотности
+     */
+    public int getSecondCount() {
+        return density.length;
+    }
+}
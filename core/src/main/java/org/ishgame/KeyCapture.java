@@ -0,0 +1,21 @@
+package org.ishgame;
+
+/**
+ * Платформенный перехват нажатий клавиш в обход InputProcessor'ов.
+ * Реализация отмечает каждое нажатие моментом, когда оно получено от оконной системы,
+ * и кладет его в очередь, которую игровой экран разбирает в своем кадре.
+ */
+public interface KeyCapture {
+
+    /**
+     * Начинает перехват; вызывается из потока рендера, когда окно уже создано.
+     *
+     * @param queue очередь, в которую кладутся нажатия
+     */
+    void start(KeyEventQueue queue);
+
+    /**
+     * Прекращает перехват и освобождает ресурсы.
+     */
+    void stop();
+}
@@ -0,0 +1,91 @@
+package org.ishgame;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Ограниченная неблокирующая очередь нажатий клавиш для одного писателя и одного читателя.
+ * Писатель (платформенный перехват клавиш, {@link KeyCapture}) кладет код клавиши и момент нажатия
+ * по {@link com.badlogic.gdx.utils.TimeUtils#nanoTime()}, читатель (игровой экран) забирает их в своем кадре.
+ * События хранятся в примитивных массивах, поэтому передача не создает объектов.
+ */
+public class KeyEventQueue {
+
+    private final int[] keycodes;
+    private final long[] times;
+    private final int mask;
+
+    // индекс следующего события для чтения (пишет только читатель)
+    private final AtomicLong head = new AtomicLong();
+    // индекс после последнего добавленного события (пишет только писатель)
+    private final AtomicLong tail = new AtomicLong();
+
+    // поля писателя
+    private long writeIndex;
+    private long cachedHead;
+
+    // поля читателя
+    private long readIndex;
+    private long cachedTail;
+
+    /**
+     * @param capacity емкость очереди; округляется вверх до степени двойки
+     */
+    public KeyEventQueue(int capacity) {
+        int size = Integer.highestOneBit(Math.max(capacity - 1, 1)) << 1;
+        keycodes = new int[size];
+        times = new long[size];
+        mask = size - 1;
+    }
+
+    // ----------------------------------------------
+    // Методы писателя
+    // ----------------------------------------------
+
+    /**
+     * Добавляет нажатие в очередь и сразу делает его видимым для читателя.
+     *
+     * @param keycode  код клавиши LibGDX (Input.Keys)
+     * @param nanoTime момент нажатия
+     * @return false, если очередь заполнена и событие отброшено
+     */
+    public boolean offer(int keycode, long nanoTime) {
+        if (writeIndex - cachedHead == keycodes.length) {
+            cachedHead = head.get();
+            if (writeIndex - cachedHead == keycodes.length)
+                return false;
+        }
+
+        int i = (int) writeIndex & mask;
+        keycodes[i] = keycode;
+        times[i] = nanoTime;
+        writeIndex++;
+        tail.lazySet(writeIndex);
+        return true;
+    }
+
+    // ----------------------------------------------
+    // Методы читателя
+    // ----------------------------------------------
+
+    public boolean isEmpty() {
+        if (readIndex == cachedTail)
+            cachedTail = tail.get();
+        return readIndex == cachedTail;
+    }
+
+    public int peekKeycode() {
+        return keycodes[(int) readIndex & mask];
+    }
+
+    public long peekTime() {
+        return times[(int) readIndex & mask];
+    }
+
+    /**
+     * Убирает первое событие из очереди; перед вызовом нужно проверить {@link #isEmpty()}.
+     */
+    public void poll() {
+        readIndex++;
+        head.lazySet(readIndex);
+    }
+}
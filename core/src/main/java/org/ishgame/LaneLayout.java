@@ -0,0 +1,117 @@
+package org.ishgame;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.Input.Keys;
+import com.badlogic.gdx.utils.GdxRuntimeException;
+
+import java.util.Arrays;
+
+/**
+ * Раскладка клавиш игры: от {@link #MIN_LANES} до {@link #MAX_LANES} дорожек, каждой соответствует своя клавиша.
+ * Раскладку задает заголовок мелодии ({@link NoteSource#declaresLanes()}), а без него - настройка "laneKeys"
+ * в Preferences игры. Код клавиши переводится в номер дорожки по таблице, без перевода в строку и поиска по списку.
+ */
+public final class LaneLayout {
+
+    public static final int MIN_LANES = 4;
+    public static final int MAX_LANES = 10;
+
+    private static final String LANE_KEYS_KEY = "laneKeys";
+    public static final String DEFAULT_KEYS = "A,S,D,F";
+
+    private final String[] keyNames;
+    // код клавиши -> номер дорожки (-1, если клавиша не используется)
+    private final int[] keyLanes;
+
+    /**
+     * @param keyNames названия клавиш слева направо, как их возвращает Keys.toString
+     */
+    public LaneLayout(String... keyNames) {
+        if (keyNames.length < MIN_LANES || keyNames.length > MAX_LANES)
+            throw new GdxRuntimeException("Lane count must be from " + MIN_LANES + " to " + MAX_LANES
+                    + ": " + Arrays.toString(keyNames));
+
+        this.keyNames = keyNames.clone();
+        keyLanes = new int[Keys.MAX_KEYCODE + 1];
+        Arrays.fill(keyLanes, -1);
+        for (int i = 0; i < keyNames.length; i++) {
+            int keycode = Keys.valueOf(keyNames[i]);
+            if (keycode < 0)
+                throw new GdxRuntimeException("Unknown key: " + keyNames[i]);
+            if (keyLanes[keycode] >= 0)
+                throw new GdxRuntimeException("Duplicate key: " + keyNames[i]);
+            keyLanes[keycode] = i;
+        }
+    }
+
+    /**
+     * @return раскладка из настроек игры; при ошибке в настройке - раскладка по умолчанию
+     */
+    public static LaneLayout fromConfig() {
+        String keys = Gdx.app.getPreferences(LatencySettings.PREFERENCES_NAME).getString(LANE_KEYS_KEY, DEFAULT_KEYS);
+        try {
+            return new LaneLayout(keys.trim().split("\\s*,\\s*"));
+        } catch (GdxRuntimeException e) {
+            Gdx.app.error("LaneLayout", "Invalid lane keys \"" + keys + "\", using " + DEFAULT_KEYS, e);
+            return new LaneLayout(DEFAULT_KEYS.split(","));
+        }
+    }
+
+    /**
+     * @param chart    загруженная мелодия
+     * @param fallback раскладка для мелодий без собственной раскладки
+     * @return раскладка, заданная мелодией, или fallback; при ошибке в заголовке мелодии (неверное количество клавиш,
+     * неизвестная или повторенная клавиша) - тоже fallback, и ноты дорожек, которых в ней нет, не появляются
+     */
+    public static LaneLayout forChart(NoteSource chart, LaneLayout fallback) {
+        if (!chart.declaresLanes())
+            return fallback;
+        String[] keys = new String[chart.getLaneCount()];
+        for (int i = 0; i < keys.length; i++)
+            keys[i] = chart.getLaneName(i);
+        try {
+            return new LaneLayout(keys);
+        } catch (GdxRuntimeException e) {
+            Gdx.app.error("LaneLayout", "Invalid chart keys " + Arrays.toString(keys) + ", using "
+                    + String.join(",", fallback.keyNames), e);
+            return fallback;
+        }
+    }
+
+    /**
+     * @param keycode код клавиши
+     * @return номер дорожки или -1, если клавиша не относится к раскладке
+     */
+    public int laneOf(int keycode) {
+        if (keycode < 0 || keycode >= keyLanes.length)
+            return -1;
+        return keyLanes[keycode];
+    }
+
+    /**
+     * @param keyName название клавиши
+     * @return номер дорожки или -1; используется один раз при загрузке мелодии
+     */
+    public int indexOf(String keyName) {
+        for (int i = 0; i < keyNames.length; i++) {
+            if (keyNames[i].equals(keyName))
+                return i;
+        }
+        return -1;
+    }
+
+    public int size() {
+        return keyNames.length;
+    }
+
+    public String getKeyName(int lane) {
+        return keyNames[lane];
+    }
+
+    /**
+     * @return копия названий клавиш слева направо
+     */
+    public String[] getKeyNames() {
+        return keyNames.clone();
+    }
+}
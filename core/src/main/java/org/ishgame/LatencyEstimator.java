@@ -0,0 +1,100 @@
+package org.ishgame;
+
+import java.util.Arrays;
+
+/**
+ * Оценка задержки по набору измерений (разниц между нажатием и ударом метронома), устойчивая к выбросам.
+ * Сначала находятся медиана и медианное абсолютное отклонение (MAD), затем измерения, которые отстоят
+ * от медианы больше чем на {@link #OUTLIER_THRESHOLD} масштабированных MAD (случайные и пропущенные нажатия),
+ * отбрасываются, и задержкой считается медиана оставшихся.
+ */
+public class LatencyEstimator {
+
+    // на сколько масштабированных MAD измерение может отстоять от медианы
+    public static final float OUTLIER_THRESHOLD = 3;
+    // MAD, умноженное на этот коэффициент, оценивает стандартное отклонение нормального распределения
+    private static final float MAD_SCALE = 1.4826f;
+
+    private float[] samples;
+    private int size;
+
+    public LatencyEstimator() {
+        samples = new float[32];
+    }
+
+    /**
+     * @param offset разница между нажатием и ударом в секундах
+     */
+    public void add(float offset) {
+        if (size == samples.length)
+            samples = Arrays.copyOf(samples, size * 2);
+        samples[size++] = offset;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * @return медиана всех измерений; 0, если измерений нет
+     */
+    public float median() {
+        return median(Arrays.copyOf(samples, size), size);
+    }
+
+    /**
+     * @return медианное абсолютное отклонение всех измерений от их медианы
+     */
+    public float medianAbsoluteDeviation() {
+        float median = median();
+        float[] deviations = new float[size];
+        for (int i = 0; i < size; i++)
+            deviations[i] = Math.abs(samples[i] - median);
+        return median(deviations, size);
+    }
+
+    /**
+     * @return медиана измерений без выбросов; 0, если измерений нет
+     */
+    public float estimate() {
+        float median = median();
+        float limit = OUTLIER_THRESHOLD * MAD_SCALE * medianAbsoluteDeviation();
+
+        float[] inliers = new float[size];
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            if (Math.abs(samples[i] - median) <= limit)
+                inliers[count++] = samples[i];
+        }
+        return median(inliers, count);
+    }
+
+    /**
+     * @return количество измерений, которые не считаются выбросами
+     */
+    public int inlierCount() {
+        float median = median();
+        float limit = OUTLIER_THRESHOLD * MAD_SCALE * medianAbsoluteDeviation();
+
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            if (Math.abs(samples[i] - median) <= limit)
+                count++;
+        }
+        return count;
+    }
+
+    private static float median(float[] values, int count) {
+        if (count == 0)
+            return 0;
+        Arrays.sort(values, 0, count);
+        int middle = count / 2;
+        if (count % 2 == 1)
+            return values[middle];
+        return (values[middle - 1] + values[middle]) / 2;
+    }
+}
@@ -0,0 +1,54 @@
+package org.ishgame;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.Preferences;
+
+/**
+ * Задержки звука и ввода, измеренные на экране калибровки и сохраненные в Preferences.
+ * Задержка звука прибавляется ко времени нот при загрузке мелодии (звук слышен позже, чем его позиция в музыке),
+ * задержка ввода вычитается из времени нажатия при оценке.
+ * Без калибровки используются значения, с которыми игра работала раньше.
+ */
+public final class LatencySettings {
+
+    public static final String PREFERENCES_NAME = "ISHGame_Rhythm";
+    private static final String AUDIO_OFFSET_KEY = "audioOffset";
+    private static final String INPUT_OFFSET_KEY = "inputOffset";
+
+    public static final float DEFAULT_AUDIO_OFFSET = 0.08f;
+    public static final float DEFAULT_INPUT_OFFSET = 0;
+
+    private LatencySettings() {
+    }
+
+    private static Preferences preferences() {
+        return Gdx.app.getPreferences(PREFERENCES_NAME);
+    }
+
+    /**
+     * @return задержка звука в секундах
+     */
+    public static float getAudioOffset() {
+        return preferences().getFloat(AUDIO_OFFSET_KEY, DEFAULT_AUDIO_OFFSET);
+    }
+
+    /**
+     * @return задержка ввода в секундах
+     */
+    public static float getInputOffset() {
+        return preferences().getFloat(INPUT_OFFSET_KEY, DEFAULT_INPUT_OFFSET);
+    }
+
+    /**
+     * Сохраняет результаты калибровки.
+     *
+     * @param audioOffset задержка звука в секундах
+     * @param inputOffset задержка ввода в секундах
+     */
+    public static void save(float audioOffset, float inputOffset) {
+        Preferences preferences = preferences();
+        preferences.putFloat(AUDIO_OFFSET_KEY, audioOffset);
+        preferences.putFloat(INPUT_OFFSET_KEY, inputOffset);
+        preferences.flush();
+    }
+}
@@ -0,0 +1,199 @@
+package org.ishgame;
+
+import com.badlogic.gdx.audio.Music;
+import com.badlogic.gdx.utils.TimeUtils;
+import org.ishgame.engine.SongClock;
+
+/**
+ * Часы мелодии, которые идут по позиции музыки.
+ * До начала музыки отсчитывают обратный отсчет длиной leadTime (время отрицательное), затем запускают музыку.
+ * <br>
+ * Music.getPosition на бэкенде OpenAL меняется крупными шагами, поэтому время не берется из нее напрямую:
+ * между отчетами музыки оно идет по {@link TimeUtils#nanoTime()}, а расхождение с очередным отчетом (дрейф)
+ * убирается плавно, долями на каждом отчете. Время никогда не идет назад и хранится в микросекундах.
+ * Большое расхождение (например, музыка зависла или перемотана) исправляется сразу.
+ * <br>
+ * Вместе со временем запоминается момент обновления, поэтому время любого события (например, нажатия клавиши)
+ * можно получить по его отметке времени, а не по моменту, когда событие дошло до обработки.
+ */
+public class MusicClock implements SongClock {
+
+    // какая доля дрейфа убирается на каждом новом отчете музыки
+    private static final float CORRECTION_GAIN = 0.2f;
+    // расхождение, начиная с которого время сразу переставляется на позицию музыки
+    private static final long SNAP_THRESHOLD_MICROS = 100_000;
+
+    private final long leadTimeMicros;
+    private Music music;
+    private boolean started;
+
+    private long timeMicros;
+    // момент последнего обновления времени в наносекундах
+    private long sampleNanos;
+    // последний отчет музыки; новым считается отчет, отличающийся от предыдущего
+    private float lastPosition;
+
+    // метрики: дрейф и поправки в микросекундах
+    private long lastDriftMicros;
+    private long maxDriftMicros;
+    private long lastCorrectionMicros;
+    private long totalCorrectionMicros;
+    private int reportCount;
+    private int snapCount;
+
+    /**
+     * @param leadTime длительность обратного отсчета перед началом музыки в секундах
+     */
+    public MusicClock(float leadTime) {
+        this.leadTimeMicros = (long) (leadTime * 1_000_000);
+    }
+
+    /**
+     * Начинает обратный отсчет перед музыкой и сбрасывает метрики.
+     *
+     * @param music музыка мелодии; запускается, когда обратный отсчет закончится
+     */
+    public void start(Music music) {
+        this.music = music;
+        started = false;
+        timeMicros = -leadTimeMicros;
+        sampleNanos = TimeUtils.nanoTime();
+        lastPosition = 0;
+
+        lastDriftMicros = 0;
+        maxDriftMicros = 0;
+        lastCorrectionMicros = 0;
+        totalCorrectionMicros = 0;
+        reportCount = 0;
+        snapCount = 0;
+    }
+
+    /**
+     * Обновление за один кадр. Время двигается по системному таймеру, а не по deltaTime кадра,
+     * который ограничивается в {@link BaseScreen#render}.
+     */
+    public void update() {
+        if (music == null)
+            return;
+
+        long now = TimeUtils.nanoTime();
+        long predicted = timeMicros + (now - sampleNanos) / 1000;
+        sampleNanos = now;
+
+        if (!started) {
+            timeMicros = predicted;
+            if (timeMicros >= 0) {
+                music.play();
+                started = true;
+                // отсчет музыки начинается с нуля, в каком бы месте кадра ни закончился обратный отсчет
+                timeMicros = 0;
+            }
+            return;
+        }
+
+        float position = music.getPosition();
+        if (!music.isPlaying() || position == lastPosition) {
+            // между отчетами музыки время идет по системному таймеру
+            timeMicros = predicted;
+            return;
+        }
+        lastPosition = position;
+
+        long drift = (long) (position * 1_000_000) - predicted;
+        reportCount++;
+        lastDriftMicros = drift;
+        maxDriftMicros = Math.max(maxDriftMicros, Math.abs(drift));
+
+        long correction;
+        if (Math.abs(drift) > SNAP_THRESHOLD_MICROS) {
+            correction = drift;
+            snapCount++;
+        } else {
+            correction = (long) (drift * CORRECTION_GAIN);
+        }
+
+        // время не должно идти назад, даже если музыка отстала
+        long corrected = Math.max(timeMicros, predicted + correction);
+        lastCorrectionMicros = corrected - predicted;
+        totalCorrectionMicros += Math.abs(lastCorrectionMicros);
+        timeMicros = corrected;
+    }
+
+    public float getTime() {
+        return timeMicros / 1_000_000f;
+    }
+
+    /**
+     * @return время мелодии в микросекундах; не уменьшается между вызовами {@link #start}
+     */
+    public long getTimeMicros() {
+        return timeMicros;
+    }
+
+    /**
+     * Время мелодии в заданный момент, продолженное от последнего обновления.
+     *
+     * @param nanoTime момент по {@link TimeUtils#nanoTime()}, например отметка времени события ввода
+     * @return время мелодии в секундах
+     */
+    public float getTimeAt(long nanoTime) {
+        return getTimeMicrosAt(nanoTime) / 1_000_000f;
+    }
+
+    /**
+     * @param nanoTime момент по {@link TimeUtils#nanoTime()}
+     * @return время мелодии в этот момент в микросекундах
+     */
+    public long getTimeMicrosAt(long nanoTime) {
+        // у событий без отметки времени она равна нулю
+        if (nanoTime == 0)
+            return timeMicros;
+        return timeMicros + (nanoTime - sampleNanos) / 1000;
+    }
+
+    public boolean isStarted() {
+        return started;
+    }
+
+    /**
+     * @return расхождение между позицией музыки и часами на последнем отчете в микросекундах
+     */
+    public long getLastDriftMicros() {
+        return lastDriftMicros;
+    }
+
+    /**
+     * @return наибольшее по модулю расхождение с начала мелодии в микросекундах
+     */
+    public long getMaxDriftMicros() {
+        return maxDriftMicros;
+    }
+
+    /**
+     * @return поправка, примененная на последнем отчете, в микросекундах
+     */
+    public long getLastCorrectionMicros() {
+        return lastCorrectionMicros;
+    }
+
+    /**
+     * @return сумма модулей всех поправок с начала мелодии в микросекундах
+     */
+    public long getTotalCorrectionMicros() {
+        return totalCorrectionMicros;
+    }
+
+    /**
+     * @return количество новых отчетов позиции музыки с начала мелодии
+     */
+    public int getReportCount() {
+        return reportCount;
+    }
+
+    /**
+     * @return сколько раз время переставлялось на позицию музыки сразу, без плавной поправки
+     */
+    public int getSnapCount() {
+        return snapCount;
+    }
+}
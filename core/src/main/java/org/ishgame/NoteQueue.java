@@ -0,0 +1,106 @@
+package org.ishgame;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Ограниченная неблокирующая очередь нот для одного писателя и одного читателя.
+ * Ноты хранятся в примитивных массивах, поэтому передача не создает объектов.
+ * Писатель публикует ноты пачками методом {@link #publish()}, читатель видит только опубликованные ноты.
+ */
+public class NoteQueue {
+
+    private final byte[] lanes;
+    private final float[] times;
+    private final int mask;
+
+    // индекс следующей ноты для чтения (пишет только читатель)
+    private final AtomicLong head = new AtomicLong();
+    // индекс после последней опубликованной ноты (пишет только писатель)
+    private final AtomicLong tail = new AtomicLong();
+
+    // поля писателя
+    private long pendingTail;
+    private long cachedHead;
+
+    // поля читателя
+    private long readIndex;
+    private long cachedTail;
+
+    /**
+     * @param capacity емкость очереди; округляется вверх до степени двойки
+     */
+    public NoteQueue(int capacity) {
+        int size = Integer.highestOneBit(Math.max(capacity - 1, 1)) << 1;
+        lanes = new byte[size];
+        times = new float[size];
+        mask = size - 1;
+    }
+
+    public int capacity() {
+        return lanes.length;
+    }
+
+    // ----------------------------------------------
+    // Методы писателя
+    // ----------------------------------------------
+
+    /**
+     * Добавляет ноту в очередь, не публикуя ее.
+     *
+     * @return false, если очередь заполнена
+     */
+    public boolean offer(int lane, float time) {
+        if (pendingTail - cachedHead == lanes.length) {
+            cachedHead = head.get();
+            if (pendingTail - cachedHead == lanes.length)
+                return false;
+        }
+
+        int i = (int) pendingTail & mask;
+        lanes[i] = (byte) lane;
+        times[i] = time;
+        pendingTail++;
+        return true;
+    }
+
+    /**
+     * Делает все добавленные ноты видимыми для читателя.
+     */
+    public void publish() {
+        tail.lazySet(pendingTail);
+    }
+
+    /**
+     * @return количество нот, которые писатель добавил, а читатель еще не забрал
+     */
+    public int pendingSize() {
+        cachedHead = head.get();
+        return (int) (pendingTail - cachedHead);
+    }
+
+    // ----------------------------------------------
+    // Методы читателя
+    // ----------------------------------------------
+
+    public boolean isEmpty() {
+        if (readIndex == cachedTail)
+            cachedTail = tail.get();
+        return readIndex == cachedTail;
+    }
+
+    public int peekLane() {
+        return lanes[(int) readIndex & mask];
+    }
+
+    public float peekTime() {
+        return times[(int) readIndex & mask];
+    }
+
+    /**
+     * Убирает первую ноту из очереди; перед вызовом нужно проверить {@link #isEmpty()}.
+     */
+    public void poll() {
+        readIndex++;
+        head.lazySet(readIndex);
+    }
+}
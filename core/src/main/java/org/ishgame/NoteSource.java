@@ -0,0 +1,50 @@
+package org.ishgame;
+
+import com.badlogic.gdx.utils.Disposable;
+
+/**
+ * Последовательный источник нот мелодии: ноты выдаются по одной в порядке времени.
+ * Реализуется мелодией, загруженной целиком ({@link SongData}), и потоковым чтением ({@link StreamingChart}).
+ */
+public interface NoteSource extends Disposable {
+
+    String getSongName();
+
+    float getSongDuration();
+
+    int getLaneCount();
+
+    String getLaneName(int lane);
+
+    /**
+     * @return true, если дорожки заданы заголовком мелодии (строка "keys=..."), и мелодия играется в своей раскладке
+     */
+    boolean declaresLanes();
+
+    /**
+     * @return количество нот в мелодии или -1, если оно еще не известно
+     */
+    int keyTimeCount();
+
+    /**
+     * @param window длина отрезка в секундах
+     * @return наибольшее (или оценочное) количество нот на отрезке заданной длины
+     */
+    int peakNoteCount(float window);
+
+    /**
+     * @return сведения о мелодии, посчитанные при загрузке, или null, если мелодия еще не прочитана целиком
+     */
+    ChartTimeline getTimeline();
+
+    boolean isFinished();
+
+    int getCurrentLane();
+
+    /**
+     * @return время текущей ноты; бесконечность, если нот больше нет
+     */
+    float getCurrentTime();
+
+    void advanceIndex();
+}
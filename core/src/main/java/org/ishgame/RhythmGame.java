@@ -1,11 +1,28 @@
 package org.ishgame;
 
+import org.ishgame.library.SongLibrary;
 import org.ishgame.screen.RhythmScreen;
 
 public class RhythmGame extends BaseGame { //класс, который создает игру
 
+    /**
+     * Библиотека мелодий; создается при запуске игры и общая для всех экранов.
+     */
+    public static SongLibrary songLibrary;
+
+    public RhythmGame() {
+    }
+
+    public RhythmGame(KeyCapture keyCapture) {
+        super(keyCapture);
+    }
+
     public void create() {
         super.create();
+        // список мелодий из индекса доступен сразу, а изменения в папках подхватываются в фоне
+        songLibrary = SongLibrary.fromConfig();
+        songLibrary.load();
+        songLibrary.rescanAsync();
         setActiveScreen(new RhythmScreen());
     }
 }
@@ -0,0 +1,77 @@
+package org.ishgame;
+
+/**
+ * Отдельная позиция чтения в мелодии, загруженной целиком. Ноты берутся из {@link SongData} без копирования
+ * и без изменения ее собственной позиции, поэтому одну мелодию могут одновременно проигрывать несколько
+ * потоков (например, при пересчете записей игр), если саму мелодию никто не меняет.
+ */
+public class SongCursor implements NoteSource {
+
+    private final SongData chart;
+    private int index;
+
+    public SongCursor(SongData chart) {
+        this.chart = chart;
+    }
+
+    public String getSongName() {
+        return chart.getSongName();
+    }
+
+    public float getSongDuration() {
+        return chart.getSongDuration();
+    }
+
+    public int getLaneCount() {
+        return chart.getLaneCount();
+    }
+
+    public String getLaneName(int lane) {
+        return chart.getLaneName(lane);
+    }
+
+    public boolean declaresLanes() {
+        return chart.declaresLanes();
+    }
+
+    public int keyTimeCount() {
+        return chart.keyTimeCount();
+    }
+
+    public int peakNoteCount(float window) {
+        return chart.peakNoteCount(window);
+    }
+
+    /**
+     * Сведения о мелодии должны быть посчитаны заранее, если курсоры используются из нескольких потоков.
+     */
+    public ChartTimeline getTimeline() {
+        return chart.getTimeline();
+    }
+
+    public boolean isFinished() {
+        return index >= chart.keyTimeCount();
+    }
+
+    public int getCurrentLane() {
+        return chart.getLane(index);
+    }
+
+    public float getCurrentTime() {
+        return chart.getTime(index);
+    }
+
+    public void advanceIndex() {
+        index++;
+    }
+
+    public void resetIndex() {
+        index = 0;
+    }
+
+    /**
+     * Курсор не держит ресурсов; мелодию освобождает ее владелец.
+     */
+    public void dispose() {
+    }
+}
@@ -1,37 +1,60 @@
 package org.ishgame;
 
 import com.badlogic.gdx.files.FileHandle;
+import com.badlogic.gdx.utils.GdxRuntimeException;
 
-import java.util.ArrayList;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
 
-public class SongData { //класс, который может записывать данные о мелодии (кнопка и тайминг) в файл формата .key и считывать данные с таких файлов
+public class SongData implements NoteSource { //класс, который может записывать данные о мелодии (кнопка и тайминг) в файл формата .key и считывать данные с таких файлов
 
-    private String songName;
-    private float songDuration;
-    private ArrayList<KeyTimePair> keyTimeList;
-    private int keyTimeIndex;
+    // сигнатура и версия двоичного формата .keyb; версия 2 добавила флаг раскладки после таблицы клавиш
+    private static final int BINARY_MAGIC = 0x4B455942; // "KEYB"
+    private static final short BINARY_VERSION = 2;
 
-    public class KeyTimePair {
+    // необязательная третья строка текстового файла: раскладка клавиш мелодии, например "keys=A,S,D,F,J,K,L"
+    public static final String KEYS_HEADER = "keys=";
 
-        private String key;
-        private Float time;
+    // максимальное количество клавиш: номер клавиши хранится в одном байте
+    public static final int MAX_LANES = Byte.MAX_VALUE;
 
-        public KeyTimePair(String key, Float time) {
-            this.key = key;
-            this.time = time;
-        }
+    private String songName;
+    private float songDuration;
 
-        public String getKey() {
-            return key;
-        }
+    // таблица клавиш: номер дорожки -> название клавиши
+    private String[] laneNames;
+    private int laneCount;
+    // true, если таблица клавиш задана заголовком мелодии, а не собрана из нот
+    private boolean declaresLanes;
 
-        public Float getTime() {
-            return time;
-        }
-    }
+    // ноты хранятся столбцами: номер дорожки и время появления для каждой ноты
+    private byte[] noteLanes;
+    private float[] noteTimes;
+    private int noteCount;
+    private int keyTimeIndex;
+    // сведения о мелодии; считаются при первом запросе и сбрасываются при изменении нот
+    private ChartTimeline timeline;
+
+    // сдвиг, который прибавляется ко времени каждой ноты при чтении и вычитается при записи
+    // (в файлах хранится время без сдвига); задается задержкой звука из калибровки
+    private float timeOffset;
 
     public SongData() {
-        keyTimeList = new ArrayList<>();
+        laneNames = new String[8];
+        noteLanes = new byte[64];
+        noteTimes = new float[64];
     }
 
     public void setSongName(String name) {
@@ -51,8 +74,100 @@ public class SongData { //класс, который может записыва
         return songDuration;
     }
 
-    public void addKeyTime(String key, Float time) {
-        keyTimeList.add(new KeyTimePair(key, time));
+    /**
+     * Задает сдвиг времени нот; должен быть задан до чтения и записи файла.
+     *
+     * @param offset сдвиг в секундах
+     */
+    public void setTimeOffset(float offset) {
+        timeOffset = offset;
+    }
+
+    public float getTimeOffset() {
+        return timeOffset;
+    }
+
+    /**
+     * Добавляет ноту по названию клавиши; новые клавиши заносятся в таблицу дорожек.
+     *
+     * @param key  название клавиши
+     * @param time время ноты в секундах
+     */
+    public void addKeyTime(String key, float time) {
+        int lane = laneIndexOf(key);
+        if (lane < 0)
+            lane = addLane(key);
+        addNote(lane, time);
+    }
+
+    /**
+     * Добавляет ноту на уже существующую дорожку.
+     *
+     * @param lane номер дорожки из таблицы клавиш
+     * @param time время ноты в секундах
+     */
+    public void addNote(int lane, float time) {
+        if (noteCount == noteTimes.length) {
+            int capacity = noteCount * 2;
+            noteLanes = Arrays.copyOf(noteLanes, capacity);
+            noteTimes = Arrays.copyOf(noteTimes, capacity);
+        }
+        noteLanes[noteCount] = (byte) lane;
+        noteTimes[noteCount] = time;
+        noteCount++;
+        timeline = null;
+    }
+
+    /**
+     * Добавляет клавишу в таблицу дорожек.
+     *
+     * @param key название клавиши
+     * @return номер новой дорожки
+     */
+    public int addLane(String key) {
+        if (laneCount == MAX_LANES)
+            throw new GdxRuntimeException("Too many keys in chart: " + key);
+        if (laneCount == laneNames.length)
+            laneNames = Arrays.copyOf(laneNames, laneCount * 2);
+        laneNames[laneCount] = key;
+        return laneCount++;
+    }
+
+    /**
+     * @param key название клавиши
+     * @return номер дорожки этой клавиши или -1, если такой клавиши в мелодии нет
+     */
+    public int laneIndexOf(String key) {
+        for (int i = 0; i < laneCount; i++) {
+            if (laneNames[i].equals(key))
+                return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Задает раскладку клавиш мелодии: клавиши становятся дорожками в заданном порядке.
+     * Должна вызываться до добавления нот.
+     *
+     * @param keys названия клавиш слева направо
+     */
+    public void declareLanes(String... keys) {
+        laneCount = 0;
+        for (String key : keys)
+            addLane(key);
+        declaresLanes = true;
+    }
+
+    public boolean declaresLanes() {
+        return declaresLanes;
+    }
+
+    public int getLaneCount() {
+        return laneCount;
+    }
+
+    public String getLaneName(int lane) {
+        return laneNames[lane];
     }
 
     public void resetIndex() {
@@ -63,25 +178,105 @@ public class SongData { //класс, который может записыва
         keyTimeIndex++;
     }
 
-    public KeyTimePair getCurrentKeyTime() {
-        return keyTimeList.get(keyTimeIndex);
+    public int getCurrentLane() {
+        return noteLanes[keyTimeIndex];
+    }
+
+    public float getCurrentTime() {
+        return noteTimes[keyTimeIndex];
+    }
+
+    public int getLane(int index) {
+        return noteLanes[index];
+    }
+
+    public float getTime(int index) {
+        return noteTimes[index];
     }
 
     public int keyTimeCount() {
-        return keyTimeList.size();
+        return noteCount;
+    }
+
+    /**
+     * Находит наибольшее количество нот, попадающих в любой отрезок времени заданной длины.
+     * Ноты должны быть отсортированы по времени.
+     *
+     * @param window длина отрезка в секундах
+     * @return наибольшее количество нот на отрезке
+     */
+    public int peakNoteCount(float window) {
+        int peak = 0;
+        int first = 0;
+        for (int last = 0; last < noteCount; last++) {
+            while (noteTimes[last] - noteTimes[first] > window)
+                first++;
+            peak = Math.max(peak, last - first + 1);
+        }
+        return peak;
+    }
+
+    public ChartTimeline getTimeline() {
+        if (timeline == null)
+            timeline = new ChartTimeline(noteTimes, noteCount);
+        return timeline;
+    }
+
+    /**
+     * Мелодия целиком хранится в памяти и не держит никаких ресурсов.
+     */
+    public void dispose() {
     }
 
     public boolean isFinished() {
-        return keyTimeIndex >= keyTimeList.size();
+        return keyTimeIndex >= noteCount;
     }
 
+    /**
+     * Записывает мелодию в текстовый файл одним буферизованным потоком. Файл сначала пишется рядом
+     * с временным именем и затем заменяет старый одним переименованием, поэтому при сбое старый файл не портится.
+     *
+     * @param file текстовый файл мелодии
+     */
     public void writeToFile(FileHandle file) { //метод, который записывает в файл
-        // boolean: true=append, false=overwrite.
-        file.writeString(getSongName() + "\n", false);
-        file.writeString(getSongDuration() + "\n", true);
-        for (KeyTimePair ktp : keyTimeList) {
-            String data = ktp.getKey() + "," + ktp.getTime() + "\n";
-            file.writeString(data, true);
+        FileHandle temp = file.sibling(file.name() + ".tmp");
+        try (Writer writer = new BufferedWriter(temp.writer(false, "UTF-8"), 65536)) {
+            writer.write(getSongName());
+            writer.write('\n');
+            writer.write(Float.toString(getSongDuration()));
+            writer.write('\n');
+            if (declaresLanes) {
+                writer.write(keysHeader());
+                writer.write('\n');
+            }
+            for (int i = 0; i < noteCount; i++) {
+                writer.write(laneNames[noteLanes[i]]);
+                writer.write(',');
+                writer.write(Float.toString(noteTimes[i] - timeOffset));
+                writer.write('\n');
+            }
+        } catch (IOException e) {
+            throw new GdxRuntimeException("Error writing chart: " + file, e);
+        }
+        replaceFile(temp, file);
+    }
+
+    /**
+     * Заменяет файл другим одним переименованием (атомарно, если это поддерживает файловая система).
+     *
+     * @param source новый файл
+     * @param target заменяемый файл
+     */
+    public static void replaceFile(FileHandle source, FileHandle target) {
+        try {
+            try {
+                Files.move(source.file().toPath(), target.file().toPath(),
+                        StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(source.file().toPath(), target.file().toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            throw new GdxRuntimeException("Error replacing " + target + " with " + source, e);
         }
     }
 
@@ -90,12 +285,182 @@ public class SongData { //класс, который может записыва
         String[] dataArray = rawData.split("\n");
         setSongName(dataArray[0]);
         setSongDuration(Float.parseFloat(dataArray[1]));
-        keyTimeList.clear();
-        for (int i = 2; i < dataArray.length; i++) {
-            String[] keyTimeData = dataArray[i].split(",");
-            String key = keyTimeData[0];
-            Float time = Float.parseFloat(keyTimeData[1]) + 0.08f;
-            keyTimeList.add(new KeyTimePair(key, time));
+        clearNotes();
+        int first = 2;
+        if (dataArray.length > 2 && dataArray[2].startsWith(KEYS_HEADER)) {
+            declareLanes(parseKeysHeader(dataArray[2]));
+            first = 3;
+        }
+        ensureCapacity(dataArray.length - first);
+        for (int i = first; i < dataArray.length; i++) {
+            String line = dataArray[i];
+            int comma = line.indexOf(',');
+            if (comma < 0)
+                continue;
+            String key = line.substring(0, comma);
+            float time = Float.parseFloat(line.substring(comma + 1)) + timeOffset;
+            addKeyTime(key, time);
+        }
+    }
+
+    /**
+     * Записывает мелодию в двоичном формате .keyb.
+     * Формат: заголовок (сигнатура, версия, название, длительность, количество нот, таблица клавиш),
+     * затем столбец номеров клавиш (по байту на ноту), выравнивание до 4 байт и столбец времени (float на ноту).
+     * Все числа записываются в порядке big-endian.
+     *
+     * @param file файл, который будет перезаписан
+     */
+    public void writeToBinaryFile(FileHandle file) {
+        byte[] nameBytes = getSongName().getBytes(StandardCharsets.UTF_8);
+        byte[][] laneBytes = new byte[laneCount][];
+        int headerSize = 4 + 2 + 2 + nameBytes.length + 4 + 4 + 1 + 1;
+        for (int i = 0; i < laneCount; i++) {
+            laneBytes[i] = laneNames[i].getBytes(StandardCharsets.UTF_8);
+            headerSize += 1 + laneBytes[i].length;
+        }
+
+        int timesOffset = align(headerSize + noteCount);
+        ByteBuffer buffer = ByteBuffer.allocate(timesOffset + 4 * noteCount);
+
+        buffer.putInt(BINARY_MAGIC);
+        buffer.putShort(BINARY_VERSION);
+        buffer.putShort((short) nameBytes.length);
+        buffer.put(nameBytes);
+        buffer.putFloat(getSongDuration());
+        buffer.putInt(noteCount);
+        buffer.put((byte) laneBytes.length);
+        for (byte[] lane : laneBytes) {
+            buffer.put((byte) lane.length);
+            buffer.put(lane);
         }
+        buffer.put((byte) (declaresLanes ? 1 : 0));
+
+        buffer.put(noteLanes, 0, noteCount);
+
+        buffer.position(timesOffset);
+        for (int i = 0; i < noteCount; i++)
+            buffer.putFloat(noteTimes[i] - timeOffset);
+
+        try (OutputStream output = file.write(false)) {
+            output.write(buffer.array());
+        } catch (IOException e) {
+            throw new GdxRuntimeException("Error writing binary chart: " + file, e);
+        }
+    }
+
+    /**
+     * Считывает мелодию из двоичного файла .keyb, отображая его в память через FileChannel.
+     *
+     * @param file файл, записанный методом writeToBinaryFile
+     */
+    public void readFromBinaryFile(FileHandle file) {
+        // FileHandle.map выставляет платформенный порядок байт, а файл всегда записан в big-endian
+        ByteBuffer buffer = file.map(FileChannel.MapMode.READ_ONLY).order(ByteOrder.BIG_ENDIAN);
+
+        if (buffer.getInt() != BINARY_MAGIC)
+            throw new GdxRuntimeException("Not a binary chart: " + file);
+        short version = buffer.getShort();
+        if (version < 1 || version > BINARY_VERSION)
+            throw new GdxRuntimeException("Unsupported binary chart version " + version + ": " + file);
+
+        setSongName(readString(buffer, buffer.getShort()));
+        setSongDuration(buffer.getFloat());
+        int count = buffer.getInt();
+
+        clearNotes();
+        int lanes = buffer.get();
+        for (int i = 0; i < lanes; i++)
+            addLane(readString(buffer, buffer.get()));
+        // в версии 1 флага нет: таблица клавиш всегда собиралась из нот
+        declaresLanes = version >= 2 && buffer.get() != 0;
+
+        // столбцы копируются целиком, без разбора по одной ноте
+        ensureCapacity(count);
+        buffer.get(noteLanes, 0, count);
+        buffer.position(align(buffer.position()));
+        buffer.asFloatBuffer().get(noteTimes, 0, count);
+        noteCount = count;
+
+        if (timeOffset != 0) {
+            for (int i = 0; i < noteCount; i++)
+                noteTimes[i] += timeOffset;
+        }
+    }
+
+    /**
+     * Читает из заголовка файла только название музыки, не загружая ноты.
+     *
+     * @param file текстовый (.key) или двоичный (.keyb) файл мелодии
+     * @return название файла музыки
+     */
+    public static String readSongName(FileHandle file) {
+        if (file.extension().equals("keyb")) {
+            try (DataInputStream input = new DataInputStream(file.read(64))) {
+                if (input.readInt() != BINARY_MAGIC)
+                    throw new GdxRuntimeException("Not a binary chart: " + file);
+                input.readShort();
+                byte[] nameBytes = new byte[input.readShort()];
+                input.readFully(nameBytes);
+                return new String(nameBytes, StandardCharsets.UTF_8);
+            } catch (IOException e) {
+                throw new GdxRuntimeException("Error reading chart header: " + file, e);
+            }
+        }
+
+        try (BufferedReader reader = file.reader(256, "UTF-8")) {
+            return reader.readLine().replaceAll("\r", "");
+        } catch (IOException e) {
+            throw new GdxRuntimeException("Error reading chart header: " + file, e);
+        }
+    }
+
+    /**
+     * @return строка заголовка с раскладкой клавиш мелодии
+     */
+    private String keysHeader() {
+        StringBuilder header = new StringBuilder(KEYS_HEADER);
+        for (int i = 0; i < laneCount; i++) {
+            if (i > 0)
+                header.append(',');
+            header.append(laneNames[i]);
+        }
+        return header.toString();
+    }
+
+    /**
+     * @param line строка заголовка, начинающаяся с {@link #KEYS_HEADER}
+     * @return названия клавиш
+     */
+    public static String[] parseKeysHeader(String line) {
+        String[] keys = line.substring(KEYS_HEADER.length()).replaceAll("\r", "").split(",");
+        for (int i = 0; i < keys.length; i++)
+            keys[i] = keys[i].trim();
+        return keys;
+    }
+
+    private void clearNotes() {
+        laneCount = 0;
+        declaresLanes = false;
+        timeline = null;
+        noteCount = 0;
+        keyTimeIndex = 0;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > noteTimes.length) {
+            noteLanes = Arrays.copyOf(noteLanes, capacity);
+            noteTimes = Arrays.copyOf(noteTimes, capacity);
+        }
+    }
+
+    private static String readString(ByteBuffer buffer, int length) {
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static int align(int offset) {
+        return (offset + 3) & ~3;
     }
 }
@@ -0,0 +1,307 @@
+package org.ishgame;
+
+import com.badlogic.gdx.files.FileHandle;
+import com.badlogic.gdx.utils.GdxRuntimeException;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Потоковое чтение текстовой мелодии .key для очень длинных уровней.
+ * Заголовок (название и длительность) читается сразу, а ноты разбираются в фоновом потоке
+ * и передаются игре через {@link NoteQueue}. Поток читает вперед только на заданное окно времени
+ * после последней забранной ноты (в начале - после начала мелодии), поэтому расход памяти не зависит от длины мелодии.
+ * Если игре нужна нота, которую поток еще не прочитал, игра ее дожидается: ноты выдаются в том же порядке
+ * и в те же моменты, что и у мелодии, загруженной целиком, и записи таких игр воспроизводятся точно.
+ * <br>
+ * Количество нот считается вторым потоком, который запускается после первой пачки нот,
+ * чтобы подсчет не задерживал начало игры.
+ * <br>
+ * Номера дорожек задаются раскладкой из заголовка мелодии, а без нее - списком клавиш игры;
+ * ноты с другими клавишами пропускаются.
+ */
+public class StreamingChart implements NoteSource {
+
+    // сколько нот публикуется одной пачкой
+    private static final int BATCH_SIZE = 64;
+    private static final int QUEUE_CAPACITY = 4096;
+    private static final int PEAK_NOTE_ESTIMATE = 256;
+    // как долго поток чтения спит, когда окно заполнено
+    private static final long PARK_NANOS = 1_000_000;
+    // как долго игра спит, дожидаясь еще не прочитанной ноты
+    private static final long AWAIT_NANOS = 50_000;
+    // с запасом на строку раскладки из LaneLayout.MAX_LANES клавиш
+    private static final int HEADER_MARK_LIMIT = 1024;
+
+    private final FileHandle file;
+    private final String[] laneNames;
+    private final boolean declaresLanes;
+    // количество строк заголовка; поток подсчета нот их пропускает
+    private final int headerLines;
+    private final float window;
+    private final float timeOffset;
+    private final NoteQueue queue;
+    private final BufferedReader reader;
+    private final Thread thread;
+    private volatile Thread counter;
+
+    private final String songName;
+    private final float songDuration;
+
+    // время последней забранной ноты; по нему поток чтения решает, сколько нот читать вперед
+    private volatile float consumedTime;
+    private volatile int noteCount = -1;
+    private volatile boolean done;
+    private volatile Throwable error;
+
+    /**
+     * Открывает файл, читает заголовок и запускает фоновый поток чтения нот.
+     *
+     * @param file      текстовый файл мелодии
+     * @param laneNames клавиши игры; индекс клавиши становится номером дорожки, если мелодия не задает свою раскладку
+     * @param window     на сколько секунд вперед держать прочитанные ноты
+     * @param timeOffset сдвиг, который прибавляется ко времени каждой ноты
+     */
+    public StreamingChart(FileHandle file, String[] laneNames, float window, float timeOffset) {
+        this.file = file;
+        this.window = window;
+        this.timeOffset = timeOffset;
+        queue = new NoteQueue(QUEUE_CAPACITY);
+        // до первой забранной ноты окно чтения отсчитывается от начала мелодии
+        consumedTime = 0;
+
+        reader = file.reader(8192, "UTF-8");
+        try {
+            songName = reader.readLine().replaceAll("\r", "");
+            songDuration = Float.parseFloat(reader.readLine());
+
+            // строка раскладки необязательна: если ее нет, чтение возвращается к первой ноте
+            reader.mark(HEADER_MARK_LIMIT);
+            String line = reader.readLine();
+            declaresLanes = line != null && line.startsWith(SongData.KEYS_HEADER);
+            headerLines = declaresLanes ? 3 : 2;
+            if (declaresLanes)
+                this.laneNames = SongData.parseKeysHeader(line);
+            else {
+                reader.reset();
+                this.laneNames = laneNames.clone();
+            }
+        } catch (IOException | RuntimeException e) {
+            closeReader();
+            throw new GdxRuntimeException("Error reading chart header: " + file, e);
+        }
+
+        thread = new Thread(this::run, "chart-stream " + file.name());
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void run() {
+        try {
+            readNotes();
+        } catch (Throwable e) {
+            error = e;
+        } finally {
+            closeReader();
+            done = true;
+        }
+    }
+
+    /**
+     * Считает ноты отдельным чтением файла: строки с запятой и известной клавишей, как в {@link #readNotes()}.
+     * Время нот не разбирается.
+     */
+    private void countNotes() {
+        int count = 0;
+        try (BufferedReader input = file.reader(65536, "UTF-8")) {
+            for (int i = 0; i < headerLines; i++)
+                input.readLine();
+
+            String line;
+            for (int lines = 1; (line = input.readLine()) != null; lines++) {
+                int comma = line.indexOf(',');
+                if (comma >= 0 && laneIndexOf(line.substring(0, comma)) >= 0)
+                    count++;
+                if ((lines & 1023) == 0 && Thread.currentThread().isInterrupted())
+                    return;
+            }
+        } catch (IOException | RuntimeException e) {
+            // без количества нот игра идет, только наибольший счет остается неизвестным
+            return;
+        }
+        noteCount = count;
+    }
+
+    /**
+     * Запускает подсчет нот; вызывается, когда игре уже опубликованы первые ноты.
+     */
+    private void startCounter() {
+        if (counter != null)
+            return;
+        Thread thread = new Thread(this::countNotes, "chart-count " + file.name());
+        thread.setDaemon(true);
+        counter = thread;
+        thread.start();
+    }
+
+    private void readNotes() throws IOException {
+        int batch = 0;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            int comma = line.indexOf(',');
+            if (comma < 0)
+                continue;
+
+            int lane = laneIndexOf(line.substring(0, comma));
+            if (lane < 0)
+                continue;
+            float time = Float.parseFloat(line.substring(comma + 1)) + timeOffset;
+
+            while (!canOffer(time)) {
+                queue.publish();
+                batch = 0;
+                startCounter();
+                LockSupport.parkNanos(PARK_NANOS);
+                if (Thread.interrupted())
+                    return;
+            }
+
+            queue.offer(lane, time);
+            if (++batch == BATCH_SIZE) {
+                queue.publish();
+                batch = 0;
+                startCounter();
+            }
+        }
+        queue.publish();
+        startCounter();
+    }
+
+    /**
+     * Ноту можно добавить, если очередь пуста (иначе игра никогда не дождется следующей ноты после длинной паузы),
+     * либо если в очереди есть место и нота попадает в окно чтения.
+     */
+    private boolean canOffer(float time) {
+        int size = queue.pendingSize();
+        if (size == 0)
+            return true;
+        return size < queue.capacity() && time <= consumedTime + window;
+    }
+
+    private int laneIndexOf(String key) {
+        for (int i = 0; i < laneNames.length; i++) {
+            if (laneNames[i].equals(key))
+                return i;
+        }
+        return -1;
+    }
+
+    private void closeReader() {
+        try {
+            reader.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    private void checkError() {
+        if (error != null)
+            throw new GdxRuntimeException("Error reading chart: " + file, error);
+    }
+
+    public String getSongName() {
+        return songName;
+    }
+
+    public float getSongDuration() {
+        return songDuration;
+    }
+
+    public int getLaneCount() {
+        return laneNames.length;
+    }
+
+    public String getLaneName(int lane) {
+        return laneNames[lane];
+    }
+
+    public boolean declaresLanes() {
+        return declaresLanes;
+    }
+
+    public int keyTimeCount() {
+        return noteCount;
+    }
+
+    /**
+     * Точное значение без чтения всей мелодии недоступно, поэтому длина отрезка не учитывается и возвращается
+     * постоянная оценка, которой хватает для большинства мелодий. Это только начальный размер: очереди дорожек
+     * ({@link org.ishgame.engine.LaneQueue}), журнал появления нот, тайлы рендерера и пул FallingBox
+     * увеличиваются сами, если нот на отрезке больше.
+     */
+    public int peakNoteCount(float window) {
+        return PEAK_NOTE_ESTIMATE;
+    }
+
+    /**
+     * Мелодия читается по частям, поэтому сведения о ней целиком недоступны.
+     */
+    public ChartTimeline getTimeline() {
+        return null;
+    }
+
+    /**
+     * Если очередь пуста, а файл еще не дочитан, дожидается следующей ноты, чтобы не спутать
+     * "нота еще не прочитана" с "нот больше нет".
+     */
+    public boolean isFinished() {
+        awaitNote();
+        return queue.isEmpty();
+    }
+
+    public int getCurrentLane() {
+        awaitNote();
+        return queue.peekLane();
+    }
+
+    /**
+     * @return время текущей ноты; бесконечность, только если нот больше нет
+     */
+    public float getCurrentTime() {
+        awaitNote();
+        if (queue.isEmpty())
+            return Float.POSITIVE_INFINITY;
+        return queue.peekTime();
+    }
+
+    /**
+     * Ждет, пока в очереди появится нота или поток чтения закончит работу. Окно чтения держит ноты
+     * далеко впереди игры, поэтому ждать приходится, только если поток чтения не успевает.
+     */
+    private void awaitNote() {
+        while (queue.isEmpty()) {
+            // флаг читается до повторной проверки очереди: все ноты, опубликованные до его установки, уже видны
+            boolean finished = done;
+            checkError();
+            if (queue.isEmpty() && finished)
+                return;
+            LockSupport.parkNanos(AWAIT_NANOS);
+        }
+    }
+
+    public void advanceIndex() {
+        awaitNote();
+        consumedTime = queue.peekTime();
+        queue.poll();
+    }
+
+    /**
+     * Останавливает фоновый поток чтения.
+     */
+    public void dispose() {
+        thread.interrupt();
+        Thread counter = this.counter;
+        if (counter != null)
+            counter.interrupt();
+    }
+}
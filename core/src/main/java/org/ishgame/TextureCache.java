@@ -0,0 +1,422 @@
+package org.ishgame;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.files.FileHandle;
+import com.badlogic.gdx.graphics.Texture;
+import com.badlogic.gdx.graphics.Texture.TextureFilter;
+import com.badlogic.gdx.graphics.g2d.Animation;
+import com.badlogic.gdx.graphics.g2d.TextureAtlas;
+import com.badlogic.gdx.graphics.g2d.TextureRegion;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.ObjectMap;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Общий для всего процесса кэш текстур и анимаций.
+ * Каждый файл декодируется и загружается в видеопамять ровно один раз,
+ * повторные запросы возвращают уже созданный объект и увеличивают счетчик ссылок.
+ * Текстура освобождается, когда счетчик ссылок становится равным нулю, либо при вызове {@link #dispose()}.
+ * <br>
+ * Если загружен атлас ({@link #loadAtlas}), изображения берутся из него как регионы по имени файла без расширения,
+ * и все спрайты из атласа рисуются с одной текстурой, без переключений и сброса SpriteBatch.
+ * Файлы, которых нет в атласе, загружаются отдельными текстурами.
+ * <br>
+ * Анимации из кэша разделяются между всеми Actor'ами, поэтому их нельзя изменять (например, через setPlayMode).
+ * Все методы должны вызываться из потока рендера.
+ */
+public final class TextureCache {
+
+    private static final ObjectMap<String, TextureEntry> textures = new ObjectMap<>();
+    private static final ObjectMap<AnimationKey, AnimationEntry> animations = new ObjectMap<>();
+    private static final ObjectMap<Animation<TextureRegion>, AnimationEntry> animationEntries = new ObjectMap<>();
+
+    // общий ключ для поиска анимаций, чтобы поиск в кэше не создавал объектов
+    private static final AnimationKey lookupKey = new AnimationKey();
+
+    // общий атлас спрайтов; null, если атлас не собран
+    private static TextureAtlas atlas;
+
+    // текстуры и анимации считаются отдельно: анимация при промахе сама загружает текстуры кадров
+    private static int hitCount;
+    private static int missCount;
+    private static int animationHitCount;
+    private static int animationMissCount;
+
+    private static class TextureEntry {
+        private final String key;
+        private final Texture texture;
+        private int references;
+
+        private TextureEntry(String key, Texture texture) {
+            this.key = key;
+            this.texture = texture;
+        }
+    }
+
+    /**
+     * Параметры анимации: список файлов или спрайт-лист с сеткой кадров, длительность кадра и зацикливание.
+     * Хэш считается один раз при заполнении ключа.
+     */
+    private static class AnimationKey {
+        // файлы кадров; null для спрайт-листа
+        private String[] fileNames;
+        // файл спрайт-листа; null для анимации из файлов
+        private String sheetName;
+        private int rows;
+        private int cols;
+        private float frameDuration;
+        private boolean loop;
+        private int hash;
+
+        private AnimationKey setFiles(String[] fileNames, float frameDuration, boolean loop) {
+            this.fileNames = fileNames;
+            sheetName = null;
+            rows = 0;
+            cols = 0;
+            return set(frameDuration, loop);
+        }
+
+        private AnimationKey setSheet(String sheetName, int rows, int cols, float frameDuration, boolean loop) {
+            fileNames = null;
+            this.sheetName = sheetName;
+            this.rows = rows;
+            this.cols = cols;
+            return set(frameDuration, loop);
+        }
+
+        private AnimationKey set(float frameDuration, boolean loop) {
+            this.frameDuration = frameDuration;
+            this.loop = loop;
+
+            int h = Float.floatToIntBits(frameDuration);
+            h = 31 * h + (loop ? 1 : 0);
+            h = 31 * h + rows;
+            h = 31 * h + cols;
+            if (fileNames != null) {
+                for (String fileName : fileNames)
+                    h = 31 * h + fileName.hashCode();
+            } else {
+                h = 31 * h + sheetName.hashCode();
+            }
+            hash = h;
+            return this;
+        }
+
+        /**
+         * @return ключ с теми же параметрами, который можно хранить в кэше
+         */
+        private AnimationKey copy() {
+            AnimationKey key = new AnimationKey();
+            key.fileNames = fileNames == null ? null : fileNames.clone();
+            key.sheetName = sheetName;
+            key.rows = rows;
+            key.cols = cols;
+            key.frameDuration = frameDuration;
+            key.loop = loop;
+            key.hash = hash;
+            return key;
+        }
+
+        public int hashCode() {
+            return hash;
+        }
+
+        public boolean equals(Object object) {
+            if (!(object instanceof AnimationKey))
+                return false;
+            AnimationKey other = (AnimationKey) object;
+            return hash == other.hash && rows == other.rows && cols == other.cols && loop == other.loop
+                    && Float.floatToIntBits(frameDuration) == Float.floatToIntBits(other.frameDuration)
+                    && Objects.equals(sheetName, other.sheetName) && Arrays.equals(fileNames, other.fileNames);
+        }
+    }
+
+    private static class AnimationEntry {
+        private final AnimationKey key;
+        private final Animation<TextureRegion> animation;
+        private final String[] fileNames;
+        private final boolean useMipMaps;
+        private int references;
+
+        private AnimationEntry(AnimationKey key, Animation<TextureRegion> animation, String[] fileNames, boolean useMipMaps) {
+            this.key = key;
+            this.animation = animation;
+            this.fileNames = fileNames;
+            this.useMipMaps = useMipMaps;
+        }
+    }
+
+    private TextureCache() {
+    }
+
+    /**
+     * Загружает атлас спрайтов, собранный задачей packTextures.
+     * Если файла нет, спрайты и дальше загружаются из отдельных файлов.
+     *
+     * @param fileName имя файла атласа
+     */
+    public static void loadAtlas(String fileName) {
+        FileHandle file = Gdx.files.internal(fileName);
+        if (!file.exists()) {
+            Gdx.app.log("TextureCache", "Atlas " + fileName + " not found, sprites are loaded from separate files");
+            return;
+        }
+
+        if (atlas != null)
+            atlas.dispose();
+        atlas = new TextureAtlas(file);
+    }
+
+    /**
+     * Возвращает изображение как регион: из атласа, если оно туда упаковано, иначе из отдельной текстуры.
+     * Каждый вызов должен сопровождаться вызовом {@link #releaseRegion}.
+     *
+     * @param fileName имя файла изображения
+     * @return регион изображения
+     */
+    public static TextureRegion obtainRegion(String fileName) {
+        TextureRegion region = findAtlasRegion(fileName);
+        if (region != null) {
+            hitCount++;
+            return region;
+        }
+        return new TextureRegion(obtainTexture(fileName, false));
+    }
+
+    /**
+     * Освобождает изображение, полученное методом {@link #obtainRegion}; регионы атласа живут до {@link #dispose()}.
+     *
+     * @param fileName имя файла изображения
+     */
+    public static void releaseRegion(String fileName) {
+        if (findAtlasRegion(fileName) == null)
+            releaseTexture(fileName, false);
+    }
+
+    /**
+     * Возвращает текстуру из кэша, загружая ее при первом обращении.
+     * Каждый вызов должен сопровождаться вызовом {@link #releaseTexture}.
+     *
+     * @param fileName   имя файла изображения
+     * @param useMipMaps генерировать ли mipmap-уровни
+     * @return общая текстура с линейной фильтрацией
+     */
+    public static Texture obtainTexture(String fileName, boolean useMipMaps) {
+        String key = textureKey(fileName, useMipMaps);
+        TextureEntry entry = textures.get(key);
+
+        if (entry == null) {
+            missCount++;
+            Texture texture = new Texture(Gdx.files.internal(fileName), useMipMaps);
+            texture.setFilter(TextureFilter.Linear, TextureFilter.Linear);
+            entry = new TextureEntry(key, texture);
+            textures.put(key, entry);
+        } else {
+            hitCount++;
+        }
+
+        entry.references++;
+        return entry.texture;
+    }
+
+    /**
+     * Уменьшает счетчик ссылок текстуры; при достижении нуля текстура выгружается из видеопамяти.
+     *
+     * @param fileName   имя файла изображения
+     * @param useMipMaps то же значение, что было передано в {@link #obtainTexture}
+     */
+    public static void releaseTexture(String fileName, boolean useMipMaps) {
+        TextureEntry entry = textures.get(textureKey(fileName, useMipMaps));
+        if (entry == null)
+            return;
+
+        entry.references--;
+        if (entry.references <= 0) {
+            textures.remove(entry.key);
+            entry.texture.dispose();
+        }
+    }
+
+    /**
+     * Возвращает общую анимацию из изображений, которые сохранены в разных файлах.
+     *
+     * @param fileNames     список имен файлов, содержащих изображения анимации
+     * @param frameDuration как долго каждый кадр должен быть отображен
+     * @param loop          для зацикливания анимации
+     * @return анимация из кэша; освобождается методом {@link #releaseAnimation}
+     */
+    public static Animation<TextureRegion> obtainAnimationFromFiles(String[] fileNames, float frameDuration, boolean loop) {
+        AnimationEntry entry = findAnimation(lookupKey.setFiles(fileNames, frameDuration, loop));
+        if (entry != null)
+            return entry.animation;
+
+        Array<TextureRegion> textureArray = new Array<>();
+        for (String fileName : fileNames)
+            textureArray.add(obtainRegion(fileName));
+
+        Animation<TextureRegion> animation = createAnimation(textureArray, frameDuration, loop);
+        AnimationKey key = lookupKey.copy();
+        return storeAnimation(key, animation, key.fileNames, false);
+    }
+
+    /**
+     * Возвращает общую анимацию из спрайт-листа: прямоугольной сетки изображений, хранящихся в одном файле.
+     *
+     * @param fileName      имя файла, содержащего спрайт-лист
+     * @param rows          количество строк изображений в спрайт-листе
+     * @param cols          количество столбцов изображений в листе спрайта
+     * @param frameDuration как долго каждый кадр должен быть отображен
+     * @param loop          для зацикливания анимации
+     * @return анимация из кэша; освобождается методом {@link #releaseAnimation}
+     */
+    public static Animation<TextureRegion> obtainAnimationFromSheet(String fileName, int rows, int cols, float frameDuration, boolean loop) {
+        AnimationEntry entry = findAnimation(lookupKey.setSheet(fileName, rows, cols, frameDuration, loop));
+        if (entry != null)
+            return entry.animation;
+
+        // спрайт-лист из атласа режется в пределах своего региона
+        TextureRegion sheet = findAtlasRegion(fileName);
+        if (sheet == null)
+            sheet = new TextureRegion(obtainTexture(fileName, true));
+        int frameWidth = sheet.getRegionWidth() / cols;
+        int frameHeight = sheet.getRegionHeight() / rows;
+
+        TextureRegion[][] temp = sheet.split(frameWidth, frameHeight);
+
+        Array<TextureRegion> textureArray = new Array<>();
+
+        for (int r = 0; r < rows; r++)
+            for (int c = 0; c < cols; c++)
+                textureArray.add(temp[r][c]);
+
+        Animation<TextureRegion> animation = createAnimation(textureArray, frameDuration, loop);
+        return storeAnimation(lookupKey.copy(), animation, new String[]{fileName}, true);
+    }
+
+    /**
+     * Уменьшает счетчик ссылок анимации; при достижении нуля освобождаются и ее текстуры.
+     *
+     * @param animation анимация, полученная из этого кэша
+     */
+    public static void releaseAnimation(Animation<TextureRegion> animation) {
+        AnimationEntry entry = animationEntries.get(animation);
+        if (entry == null)
+            return;
+
+        entry.references--;
+        if (entry.references <= 0) {
+            animations.remove(entry.key);
+            animationEntries.remove(animation);
+            for (String fileName : entry.fileNames) {
+                if (findAtlasRegion(fileName) == null)
+                    releaseTexture(fileName, entry.useMipMaps);
+            }
+        }
+    }
+
+    /**
+     * Выгружает все текстуры и атлас независимо от счетчиков ссылок; вызывается при завершении игры.
+     */
+    public static void dispose() {
+        for (TextureEntry entry : textures.values())
+            entry.texture.dispose();
+
+        if (atlas != null) {
+            atlas.dispose();
+            atlas = null;
+        }
+
+        textures.clear();
+        animations.clear();
+        animationEntries.clear();
+    }
+
+    /**
+     * @return количество запросов изображений и текстур, для которых они уже были в кэше или в атласе
+     */
+    public static int getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * @return количество запросов изображений и текстур, для которых пришлось загружать файл
+     */
+    public static int getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * @return количество запросов анимаций, для которых анимация уже была в кэше
+     */
+    public static int getAnimationHitCount() {
+        return animationHitCount;
+    }
+
+    /**
+     * @return количество запросов анимаций, для которых ее пришлось создавать; загрузки кадров
+     * при этом считаются в {@link #getMissCount()}
+     */
+    public static int getAnimationMissCount() {
+        return animationMissCount;
+    }
+
+    /**
+     * @return количество текстур, которые сейчас находятся в видеопамяти
+     */
+    public static int getTextureCount() {
+        return textures.size;
+    }
+
+    public static void resetCounters() {
+        hitCount = 0;
+        missCount = 0;
+        animationHitCount = 0;
+        animationMissCount = 0;
+    }
+
+    /**
+     * @param fileName имя файла изображения
+     * @return регион атласа с именем файла без расширения или null, если атлас не загружен или такого региона нет
+     */
+    private static TextureRegion findAtlasRegion(String fileName) {
+        if (atlas == null)
+            return null;
+        int dot = fileName.lastIndexOf('.');
+        return atlas.findRegion(dot < 0 ? fileName : fileName.substring(0, dot));
+    }
+
+    private static String textureKey(String fileName, boolean useMipMaps) {
+        return useMipMaps ? fileName + "#mipmap" : fileName;
+    }
+
+    private static AnimationEntry findAnimation(AnimationKey key) {
+        AnimationEntry entry = animations.get(key);
+        if (entry != null) {
+            animationHitCount++;
+            entry.references++;
+        }
+        return entry;
+    }
+
+    private static Animation<TextureRegion> createAnimation(Array<TextureRegion> textureArray, float frameDuration, boolean loop) {
+        Animation<TextureRegion> animation = new Animation<>(frameDuration, textureArray);
+        animation.setPlayMode(Animation.PlayMode.NORMAL);
+
+        if (loop)
+            animation.setPlayMode(Animation.PlayMode.LOOP);
+
+        return animation;
+    }
+
+    private static Animation<TextureRegion> storeAnimation(AnimationKey key, Animation<TextureRegion> animation,
+                                                           String[] fileNames, boolean useMipMaps) {
+        animationMissCount++;
+        AnimationEntry entry = new AnimationEntry(key, animation, fileNames, useMipMaps);
+        entry.references = 1;
+        animations.put(entry.key, entry);
+        animationEntries.put(animation, entry);
+        return animation;
+    }
+}
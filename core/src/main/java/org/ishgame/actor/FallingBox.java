@@ -4,31 +4,48 @@ import com.badlogic.gdx.graphics.Color;
 import com.badlogic.gdx.scenes.scene2d.Action;
 import com.badlogic.gdx.scenes.scene2d.Stage;
 import com.badlogic.gdx.scenes.scene2d.actions.Actions;
+import com.badlogic.gdx.utils.Pool;
 import org.ishgame.BaseActor;
 
-public class FallingBox extends BaseActor { //класс, отвечающий за тайлы
+/**
+ * Анимация исчезновения оцененного тайла; сами падающие тайлы рисует {@link NoteLaneRenderer}.
+ */
+public class FallingBox extends BaseActor implements Pool.Poolable { //класс, отвечающий за тайлы
 
-    public FallingBox(float x, float y, Stage stage) {
+    // длительность анимации исчезновения тайла
+    public static final float FLASH_DURATION = 0.25f;
+
+    private final Runnable freeTask;
+
+    public FallingBox(float x, float y, Stage stage, Pool<FallingBox> pool) {
         super(x, y, stage);
         loadTexture("box.png");
         setScale(0.75f, 0.75f);
-    }
 
-    public void act(float dt) {
-        super.act(dt);
-        applyPhysics(dt);
+        // создается один раз, чтобы возврат в пул не создавал мусора
+        freeTask = () -> pool.free(this);
     }
 
     public void flashOut() {
 
-        float duration = 0.25f;
-
         Action flashOut = Actions.parallel(
-                Actions.scaleTo(1.5f, 1.5f, duration),
-                Actions.color(Color.WHITE, duration),
-                Actions.fadeOut(duration));
+                Actions.scaleTo(1.5f, 1.5f, FLASH_DURATION),
+                Actions.color(Color.WHITE, FLASH_DURATION),
+                Actions.fadeOut(FLASH_DURATION));
 
         addAction(flashOut);
-        addAction(Actions.after(Actions.removeActor()));
+        // после исчезновения тайл возвращается в пул (reset убирает его со сцены)
+        addAction(Actions.after(Actions.run(freeTask)));
+    }
+
+    /**
+     * Возвращает тайл в исходное состояние при возврате в пул; вызывается методом Pool.free.
+     */
+    public void reset() {
+        clearActions();
+        remove();
+        setPosition(0, 0);
+        setScale(0.75f, 0.75f);
+        setColor(Color.WHITE);
     }
 }
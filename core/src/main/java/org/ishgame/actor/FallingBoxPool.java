@@ -0,0 +1,49 @@
+package org.ishgame.actor;
+
+import com.badlogic.gdx.scenes.scene2d.Stage;
+import com.badlogic.gdx.utils.Pool;
+
+/**
+ * Пул тайлов для одной сцены.
+ * Тайлы создаются заранее (метод fill) и переиспользуются,
+ * поэтому во время игры новые объекты не создаются и сборщик мусора не вызывается.
+ */
+public class FallingBoxPool extends Pool<FallingBox> {
+
+    private final Stage stage;
+
+    public FallingBoxPool(Stage stage) {
+        this.stage = stage;
+    }
+
+    protected FallingBox newObject() {
+        // BaseActor сразу добавляет себя на сцену, а свободный тайл на сцене находиться не должен
+        FallingBox fb = new FallingBox(0, 0, stage, this);
+        fb.remove();
+        return fb;
+    }
+
+    /**
+     * Достает тайл из пула и размещает его на сцене.
+     *
+     * @param x x-координата тайла
+     * @param y y-координата тайла
+     * @return тайл, готовый к движению
+     */
+    public FallingBox obtain(float x, float y) {
+        FallingBox fb = obtain();
+        fb.setPosition(x, y);
+        stage.addActor(fb);
+        return fb;
+    }
+
+    /**
+     * Дополняет пул до заданного количества свободных тайлов.
+     *
+     * @param size сколько тайлов должно быть готово к использованию
+     */
+    public void prewarm(int size) {
+        if (size > getFree())
+            fill(size - getFree());
+    }
+}
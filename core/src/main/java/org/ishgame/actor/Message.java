@@ -3,22 +3,24 @@ package org.ishgame.actor;
 import com.badlogic.gdx.Gdx;
 import com.badlogic.gdx.audio.Sound;
 import com.badlogic.gdx.graphics.g2d.Animation;
+import com.badlogic.gdx.graphics.g2d.TextureRegion;
 import com.badlogic.gdx.scenes.scene2d.Action;
 import com.badlogic.gdx.scenes.scene2d.Stage;
 import com.badlogic.gdx.scenes.scene2d.actions.Actions;
 import org.ishgame.BaseActor;
+import org.ishgame.engine.Judgment;
 
 public class Message extends BaseActor { //класс, отвечающий за анимации сообщений
 
-    public Animation perfect;
-    public Animation great;
-    public Animation good;
-    public Animation almost;
-    public Animation miss;
-    private Animation countdown3;
-    private Animation countdown2;
-    private Animation countdown1;
-    private Animation congratulations;
+    public Animation<TextureRegion> perfect;
+    public Animation<TextureRegion> great;
+    public Animation<TextureRegion> good;
+    public Animation<TextureRegion> almost;
+    public Animation<TextureRegion> miss;
+    private Animation<TextureRegion> countdown3;
+    private Animation<TextureRegion> countdown2;
+    private Animation<TextureRegion> countdown1;
+    private Animation<TextureRegion> congratulations;
 
     private Sound blip;
     private Sound tone;
@@ -52,6 +54,29 @@ public class Message extends BaseActor { //класс, отвечающий за
         addAction(pulseFade);
     }
 
+    /**
+     * Показывает оценку нажатия.
+     */
+    public void showJudgment(Judgment judgment) {
+        switch (judgment) {
+            case PERFECT:
+                setAnimation(perfect);
+                break;
+            case GREAT:
+                setAnimation(great);
+                break;
+            case GOOD:
+                setAnimation(good);
+                break;
+            case ALMOST:
+                setAnimation(almost);
+                break;
+            default:
+                setAnimation(miss);
+        }
+        pulseFade();
+    }
+
     public void displayCountdown() {
         Action countdown = Actions.sequence(
                 Actions.run(() -> setAnimation(countdown3)),
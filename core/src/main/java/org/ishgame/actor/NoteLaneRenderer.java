@@ -0,0 +1,218 @@
+package org.ishgame.actor;
+
+import com.badlogic.gdx.graphics.Color;
+import com.badlogic.gdx.graphics.g2d.Batch;
+import com.badlogic.gdx.graphics.g2d.TextureRegion;
+import com.badlogic.gdx.scenes.scene2d.Actor;
+import com.badlogic.gdx.scenes.scene2d.Stage;
+import com.badlogic.gdx.scenes.scene2d.Touchable;
+import org.ishgame.TextureCache;
+import org.ishgame.engine.LaneQueue;
+
+import java.util.Arrays;
+
+/**
+ * Рисует падающие тайлы всех дорожек одним вызовом batch.draw.
+ * Тайлы не являются Actor'ами: для каждой дорожки хранится только время нот, а высота тайла
+ * считается по времени мелодии при отрисовке. Вершины всех видимых тайлов собираются в один массив
+ * в формате SpriteBatch (позиция, цвет, текстурные координаты), поэтому на тайл не тратятся
+ * ни обход дерева сцены, ни смена цвета и матрицы.
+ * <br>
+ * Сам рендерер - обычный Actor, поэтому тайлы рисуются в порядке сцены, как и раньше.
+ */
+public class NoteLaneRenderer extends Actor {
+
+    // вершин на тайл и чисел на вершину в формате SpriteBatch
+    private static final int VERTEX_SIZE = 5;
+    private static final int SPRITE_SIZE = 4 * VERTEX_SIZE;
+
+    private final String textureName;
+    // регион тайла; при собранном атласе тайлы рисуются той же текстурой, что и остальная сцена
+    private final TextureRegion region;
+    private final float boxSize;
+    // тайл масштабируется относительно центра изображения, как FallingBox
+    private final float inset;
+
+    // положение и упакованный цвет каждой дорожки
+    private final float[] laneX;
+    private final float[] laneColors;
+    // время нот, которые сейчас на экране, по дорожкам
+    private final LaneQueue[] laneNotes;
+
+    private float targetY;
+    private float noteSpeed;
+    private float songTime;
+
+    private float[] vertices;
+
+    /**
+     * @param stage       сцена, на которой рисуются тайлы
+     * @param textureName имя файла изображения тайла
+     * @param scale       масштаб тайла относительно размера изображения
+     * @param laneCount   количество дорожек
+     */
+    public NoteLaneRenderer(Stage stage, String textureName, float scale, int laneCount) {
+        this.textureName = textureName;
+        region = TextureCache.obtainRegion(textureName);
+        boxSize = region.getRegionWidth() * scale;
+        inset = (region.getRegionWidth() - boxSize) / 2;
+
+        laneX = new float[laneCount];
+        laneColors = new float[laneCount];
+        laneNotes = new LaneQueue[laneCount];
+        for (int i = 0; i < laneCount; i++)
+            laneNotes[i] = new LaneQueue(64);
+
+        vertices = new float[64 * SPRITE_SIZE];
+        setTouchable(Touchable.disabled);
+        stage.addActor(this);
+    }
+
+    /**
+     * Задает положение и цвет дорожки.
+     *
+     * @param lane  номер дорожки
+     * @param x     x-координата левого края кнопки дорожки
+     * @param color цвет тайлов дорожки
+     */
+    public void setLane(int lane, float x, Color color) {
+        laneX[lane] = x + inset;
+        laneColors[lane] = color.toFloatBits();
+    }
+
+    /**
+     * @param targetY   высота, на которой тайл пересекает кнопку
+     * @param noteSpeed скорость падения в пикселях в секунду
+     */
+    public void setTimeline(float targetY, float noteSpeed) {
+        this.targetY = targetY;
+        this.noteSpeed = noteSpeed;
+    }
+
+    /**
+     * @param time время мелодии, по которому расставляются тайлы при следующей отрисовке
+     */
+    public void setSongTime(float time) {
+        songTime = time;
+    }
+
+    public void addNote(int lane, float time) {
+        laneNotes[lane].add(time);
+    }
+
+    /**
+     * Убирает первый (самый нижний) тайл дорожки.
+     *
+     * @param lane номер дорожки
+     * @return время убранной ноты
+     */
+    public float removeFirstNote(int lane) {
+        return laneNotes[lane].removeFirst();
+    }
+
+    /**
+     * @param time время ноты
+     * @return y-координата тайла этой ноты (как у FallingBox) при текущем времени мелодии
+     */
+    public float getNoteY(float time) {
+        return getBoxY(time) - inset;
+    }
+
+    /**
+     * @param lane номер дорожки
+     * @return x-координата тайлов дорожки (как у FallingBox)
+     */
+    public float getLaneX(int lane) {
+        return laneX[lane] - inset;
+    }
+
+    /**
+     * Убирает все тайлы и готовит дорожки к новой мелодии.
+     *
+     * @param capacity наибольшее количество тайлов на одной дорожке
+     */
+    public void clearNotes(int capacity) {
+        for (LaneQueue notes : laneNotes) {
+            notes.clear();
+            notes.ensureCapacity(capacity);
+        }
+    }
+
+    public void draw(Batch batch, float parentAlpha) {
+        float top = getStage().getHeight();
+        int count = 0;
+
+        for (int lane = 0; lane < laneNotes.length; lane++) {
+            LaneQueue notes = laneNotes[lane];
+            float x = laneX[lane];
+            float color = laneColors[lane];
+
+            for (int i = 0; i < notes.size(); i++) {
+                float y = getBoxY(notes.get(i));
+                // ноты отсортированы по времени, поэтому все следующие тайлы дорожки тоже выше экрана
+                if (y > top)
+                    break;
+                if (y + boxSize < 0)
+                    continue;
+
+                ensureCapacity(count + 1);
+                putSprite(count * SPRITE_SIZE, x, y, color);
+                count++;
+            }
+        }
+
+        if (count > 0)
+            batch.draw(region.getTexture(), vertices, 0, count * SPRITE_SIZE);
+    }
+
+    /**
+     * Освобождает текстуру тайла; вызывается, когда экран больше не нужен.
+     */
+    public void dispose() {
+        TextureCache.releaseRegion(textureName);
+    }
+
+    private float getBoxY(float time) {
+        return targetY + (time - songTime) * noteSpeed + inset;
+    }
+
+    private void putSprite(int offset, float x, float y, float color) {
+        float x2 = x + boxSize;
+        float y2 = y + boxSize;
+        float u = region.getU();
+        float v = region.getV();
+        float u2 = region.getU2();
+        float v2 = region.getV2();
+        float[] vertex = vertices;
+
+        // нижняя граница изображения соответствует v2, как в SpriteBatch
+        vertex[offset] = x;
+        vertex[offset + 1] = y;
+        vertex[offset + 2] = color;
+        vertex[offset + 3] = u;
+        vertex[offset + 4] = v2;
+
+        vertex[offset + 5] = x;
+        vertex[offset + 6] = y2;
+        vertex[offset + 7] = color;
+        vertex[offset + 8] = u;
+        vertex[offset + 9] = v;
+
+        vertex[offset + 10] = x2;
+        vertex[offset + 11] = y2;
+        vertex[offset + 12] = color;
+        vertex[offset + 13] = u2;
+        vertex[offset + 14] = v;
+
+        vertex[offset + 15] = x2;
+        vertex[offset + 16] = y;
+        vertex[offset + 17] = color;
+        vertex[offset + 18] = u2;
+        vertex[offset + 19] = v2;
+    }
+
+    private void ensureCapacity(int sprites) {
+        if (sprites * SPRITE_SIZE > vertices.length)
+            vertices = Arrays.copyOf(vertices, vertices.length * 2);
+    }
+}
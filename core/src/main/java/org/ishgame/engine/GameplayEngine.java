@@ -0,0 +1,222 @@
+package org.ishgame.engine;
+
+import org.ishgame.NoteSource;
+
+/**
+ * Игровая логика без графики и звука: появление нот по часам мелодии,
+ * оценка нажатий, подсчет очков и комбо.
+ * Не зависит от Stage, Music и окна, поэтому работает как в игре, так и в симуляции
+ * (с бэкендом headless или вовсе без бэкенда LibGDX).
+ * <br>
+ * Время каждой ноты - это момент, когда ее тайл должен пересечь кнопку; нота появляется за leadTime секунд до него.
+ * Нажатия оцениваются по времени: время нажатия (по часам мелодии) сравнивается со временем ноты,
+ * окна попадания и очки задаются в {@link Judgment} (или в {@link ScoringRules} при пересчете записей игр).
+ * Поэтому оценка не зависит ни от частоты кадров, ни от скорости тайлов.
+ */
+public class GameplayEngine {
+
+    private static final Judgment[] JUDGMENTS = Judgment.values();
+
+    private final NoteSource chart;
+    private final int[] laneColumns;
+    private final float leadTime;
+    private final SongClock clock;
+    private final GameplayListener listener;
+    private final ScoringRules rules;
+    // нота считается пропущенной, когда ее время прошло больше, чем на самое широкое окно попадания
+    private final float lateWindow;
+    // задержка ввода: на сколько секунд отметка нажатия позже настоящего нажатия
+    private float inputOffset;
+
+    // время нот, которые уже появились и еще не оценены, по дорожкам экрана
+    private final LaneQueue[] activeNotes;
+    // сколько нот появилось и сколько снято (оценено) на каждой дорожке за мелодию
+    private final int[] spawnedCounts;
+    private final int[] retiredCounts;
+    // все появившиеся ноты в порядке времени; по нему ищутся промахи
+    private final SpawnLog spawnLog;
+
+    private int score;
+    private int combo;
+    private int maxCombo;
+    private final int[] judgmentCounts;
+
+    /**
+     * @param chart        источник нот
+     * @param columnCount  количество дорожек (кнопок) на экране
+     * @param laneColumns  номер дорожки мелодии -> номер дорожки экрана (-1, если такой кнопки нет)
+     * @param leadTime     за сколько секунд до своего времени появляется нота
+     * @param clock        часы мелодии
+     * @param listener     получатель игровых событий
+     */
+    public GameplayEngine(NoteSource chart, int columnCount, int[] laneColumns, float leadTime,
+                          SongClock clock, GameplayListener listener) {
+        this(chart, columnCount, laneColumns, leadTime, clock, listener, ScoringRules.DEFAULT);
+    }
+
+    /**
+     * @param rules очки и окна попадания
+     * @see #GameplayEngine(NoteSource, int, int[], float, SongClock, GameplayListener)
+     */
+    public GameplayEngine(NoteSource chart, int columnCount, int[] laneColumns, float leadTime,
+                          SongClock clock, GameplayListener listener, ScoringRules rules) {
+        this.chart = chart;
+        this.laneColumns = laneColumns.clone();
+        this.leadTime = leadTime;
+        this.clock = clock;
+        this.listener = listener;
+        this.rules = rules;
+        lateWindow = rules.getLateWindow();
+
+        // на дорожке одновременно не больше нот, чем во всей мелодии за время от появления ноты до промаха
+        int capacity = chart.peakNoteCount(leadTime + lateWindow);
+        activeNotes = new LaneQueue[columnCount];
+        for (int i = 0; i < columnCount; i++)
+            activeNotes[i] = new LaneQueue(capacity);
+        spawnedCounts = new int[columnCount];
+        retiredCounts = new int[columnCount];
+        spawnLog = new SpawnLog(capacity);
+        judgmentCounts = new int[JUDGMENTS.length];
+    }
+
+    /**
+     * @param offset задержка ввода в секундах; вычитается из времени каждого нажатия
+     */
+    public void setInputOffset(float offset) {
+        inputOffset = offset;
+    }
+
+    /**
+     * Сбрасывает счет и убирает все ноты с дорожек; позицию в мелодии сбрасывает вызывающий код.
+     */
+    public void reset() {
+        for (LaneQueue notes : activeNotes)
+            notes.clear();
+        for (int i = 0; i < activeNotes.length; i++) {
+            spawnedCounts[i] = 0;
+            retiredCounts[i] = 0;
+        }
+        spawnLog.clear();
+        score = 0;
+        combo = 0;
+        maxCombo = 0;
+        for (int i = 0; i < judgmentCounts.length; i++)
+            judgmentCounts[i] = 0;
+    }
+
+    /**
+     * Обновление за один кадр: доводит игру до текущего времени часов мелодии.
+     */
+    public void update() {
+        advance(clock.getTime());
+    }
+
+    /**
+     * Выпускает ноты, время появления которых подошло, и засчитывает промахи по нотам, окно которых уже закрылось.
+     *
+     * @param time время мелодии в секундах
+     */
+    private void advance(float time) {
+        while (!chart.isFinished() && time + leadTime >= chart.getCurrentTime()) {
+            int column = laneColumns[chart.getCurrentLane()];
+            float noteTime = chart.getCurrentTime();
+            chart.advanceIndex();
+
+            if (column < 0)
+                continue;
+
+            activeNotes[column].add(noteTime);
+            spawnLog.add(column, spawnedCounts[column]++, noteTime);
+            listener.noteSpawned(column, noteTime);
+        }
+
+        // убирает все ноты, которые прошли ниже кнопок, в порядке времени по всем дорожкам сразу
+        while (!spawnLog.isEmpty() && time - spawnLog.firstTime() > lateWindow) {
+            int column = spawnLog.firstColumn();
+            int ordinal = spawnLog.firstOrdinal();
+            spawnLog.removeFirst();
+
+            // ноты дорожки снимаются по порядку, поэтому нота либо уже оценена, либо первая на дорожке
+            if (ordinal < retiredCounts[column])
+                continue;
+
+            activeNotes[column].removeFirst();
+            retiredCounts[column]++;
+            record(Judgment.MISS);
+            listener.noteMissed(column);
+        }
+    }
+
+    /**
+     * Обрабатывает нажатие клавиши дорожки: оценивает первую ноту дорожки
+     * по разнице между временем нажатия и временем ноты.
+     *
+     * @param column номер дорожки экрана
+     * @param time   время нажатия по часам мелодии (момент, когда клавишу нажали, а не когда событие обработано)
+     */
+    public void keyPressed(int column, float time) {
+        if (column < 0 || column >= activeNotes.length)
+            return;
+
+        time -= inputOffset;
+
+        // сначала игра доводится до момента нажатия, чтобы опоздавшие ноты были засчитаны как промахи
+        advance(time);
+
+        LaneQueue notes = activeNotes[column];
+        if (notes.isEmpty()) {
+            listener.emptyPress(column);
+            return;
+        }
+
+        Judgment judgment = rules.judge(time - notes.removeFirst());
+        retiredCounts[column]++;
+        record(judgment);
+        listener.noteHit(column, judgment);
+    }
+
+    private void record(Judgment judgment) {
+        score += rules.getPoints(judgment);
+        judgmentCounts[judgment.ordinal()]++;
+
+        if (judgment == Judgment.MISS) {
+            combo = 0;
+        } else {
+            combo++;
+            maxCombo = Math.max(maxCombo, combo);
+        }
+    }
+
+    /**
+     * @return true, если все ноты мелодии появились и оценены
+     */
+    public boolean isFinished() {
+        if (!chart.isFinished())
+            return false;
+        for (LaneQueue notes : activeNotes) {
+            if (!notes.isEmpty())
+                return false;
+        }
+        return true;
+    }
+
+    public int getScore() {
+        return score;
+    }
+
+    public int getCombo() {
+        return combo;
+    }
+
+    public int getMaxCombo() {
+        return maxCombo;
+    }
+
+    public int getJudgmentCount(Judgment judgment) {
+        return judgmentCounts[judgment.ordinal()];
+    }
+
+    public int getColumnCount() {
+        return activeNotes.length;
+    }
+}
@@ -0,0 +1,28 @@
+package org.ishgame.engine;
+
+/**
+ * Получает события игровой логики; экран игры использует их для отображения тайлов и сообщений.
+ * Номер дорожки здесь - это номер кнопки на экране.
+ */
+public interface GameplayListener {
+
+    /**
+     * Нота появилась и начала падать (за leadTime секунд до своего времени).
+     */
+    void noteSpawned(int lane, float time);
+
+    /**
+     * По первой ноте дорожки нажали клавишу; нота убрана с дорожки.
+     */
+    void noteHit(int lane, Judgment judgment);
+
+    /**
+     * Первая нота дорожки прошла мимо кнопки без нажатия; нота убрана с дорожки.
+     */
+    void noteMissed(int lane);
+
+    /**
+     * Клавишу нажали, когда на дорожке не было нот.
+     */
+    void emptyPress(int lane);
+}
@@ -0,0 +1,99 @@
+package org.ishgame.engine;
+
+import org.ishgame.SongData;
+
+/**
+ * Прогоняет мелодию через {@link GameplayEngine} без окна и музыки.
+ * Часы двигаются шагами фиксированной длины (кадрами), нажатия берутся из {@link KeyPressList},
+ * поэтому мелодия симулируется во много тысяч раз быстрее реального времени.
+ * Дорожки мелодии совпадают с дорожками экрана.
+ */
+public class GameplaySimulation {
+
+    // получатель событий, который ничего не делает
+    public static final GameplayListener SILENT = new GameplayListener() {
+        public void noteSpawned(int lane, float time) {
+        }
+
+        public void noteHit(int lane, Judgment judgment) {
+        }
+
+        public void noteMissed(int lane) {
+        }
+
+        public void emptyPress(int lane) {
+        }
+    };
+
+    private final SongData chart;
+    private final float leadTime;
+    private final ManualClock clock;
+    private final GameplayEngine engine;
+
+    public GameplaySimulation(SongData chart, float leadTime) {
+        this(chart, leadTime, SILENT);
+    }
+
+    public GameplaySimulation(SongData chart, float leadTime, GameplayListener listener) {
+        this.chart = chart;
+        this.leadTime = leadTime;
+
+        int[] laneColumns = new int[chart.getLaneCount()];
+        for (int i = 0; i < laneColumns.length; i++)
+            laneColumns[i] = i;
+
+        clock = new ManualClock(-leadTime);
+        engine = new GameplayEngine(chart, laneColumns.length, laneColumns, leadTime, clock, listener);
+    }
+
+    /**
+     * Симулирует мелодию от начала до конца.
+     * Как и в игре, нажатия за кадр обрабатываются до обновления логики этого кадра,
+     * но оцениваются по собственному времени нажатия.
+     *
+     * @param input     нажатия в порядке времени
+     * @param frameStep длительность кадра в секундах; должна быть больше нуля, иначе часы не двигаются
+     * @return итоговый счет
+     * @throws IllegalArgumentException если frameStep не больше нуля
+     */
+    public int run(KeyPressList input, float frameStep) {
+        // проверка записана через отрицание, чтобы отбросить и NaN
+        if (!(frameStep > 0))
+            throw new IllegalArgumentException("Frame step must be positive: " + frameStep);
+
+        chart.resetIndex();
+        clock.setTime(-leadTime);
+        engine.reset();
+
+        int next = 0;
+        while (!engine.isFinished() || next < input.size()) {
+            clock.advance(frameStep);
+
+            while (next < input.size() && input.getTime(next) <= clock.getTime()) {
+                engine.keyPressed(input.getLane(next), input.getTime(next));
+                next++;
+            }
+
+            engine.update();
+        }
+
+        return engine.getScore();
+    }
+
+    public GameplayEngine getEngine() {
+        return engine;
+    }
+
+    /**
+     * Создает идеальный поток нажатий: каждая нота нажимается точно в свое время.
+     *
+     * @param chart мелодия
+     * @return нажатия по всем нотам мелодии
+     */
+    public static KeyPressList autoplay(SongData chart) {
+        KeyPressList input = new KeyPressList();
+        for (int i = 0; i < chart.keyTimeCount(); i++)
+            input.add(chart.getTime(i), chart.getLane(i));
+        return input;
+    }
+}
@@ -0,0 +1,23 @@
+package org.ishgame.engine;
+
+/**
+ * Оценка нажатия: количество очков и окно попадания.
+ * Нажатие получает первую оценку, в окно которой попадает разница между временем нажатия и временем ноты;
+ * окна и очки, по которым оценивает игра, задаются {@link ScoringRules} (по умолчанию - значения отсюда).
+ */
+public enum Judgment {
+    PERFECT(100, 0.050f),
+    GREAT(80, 0.100f),
+    GOOD(50, 0.150f),
+    ALMOST(20, 0.200f),
+    MISS(0, Float.POSITIVE_INFINITY);
+
+    public final int points;
+    // максимальное отклонение от времени ноты в секундах (в обе стороны)
+    public final float window;
+
+    Judgment(int points, float window) {
+        this.points = points;
+        this.window = window;
+    }
+}
@@ -0,0 +1,45 @@
+package org.ishgame.engine;
+
+import java.util.Arrays;
+
+/**
+ * Заранее записанный поток нажатий для симуляции: время нажатия и номер дорожки экрана.
+ * Нажатия должны добавляться в порядке времени.
+ */
+public class KeyPressList {
+
+    private float[] times;
+    private int[] lanes;
+    private int size;
+
+    public KeyPressList() {
+        times = new float[64];
+        lanes = new int[64];
+    }
+
+    public void add(float time, int lane) {
+        if (size == times.length) {
+            times = Arrays.copyOf(times, size * 2);
+            lanes = Arrays.copyOf(lanes, size * 2);
+        }
+        times[size] = time;
+        lanes[size] = lane;
+        size++;
+    }
+
+    public float getTime(int index) {
+        return times[index];
+    }
+
+    public int getLane(int index) {
+        return lanes[index];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+}
@@ -0,0 +1,96 @@
+package org.ishgame.engine;
+
+import com.badlogic.gdx.math.MathUtils;
+
+/**
+ * Очередь времени нот одной дорожки на кольцевом буфере.
+ * Ноты добавляются в конец в порядке времени и снимаются с начала, поэтому просмотр и снятие первой ноты
+ * стоят O(1) без сдвига элементов. Емкость задается заранее по наибольшему количеству нот на экране;
+ * если ее все же не хватит, буфер увеличивается вдвое.
+ */
+public class LaneQueue {
+
+    private float[] times;
+    // индекс первой ноты и маска для индексов (емкость - степень двойки)
+    private int head;
+    private int mask;
+    private int size;
+
+    /**
+     * @param capacity сколько нот очередь вмещает без увеличения буфера
+     */
+    public LaneQueue(int capacity) {
+        times = new float[powerOfTwo(capacity)];
+        mask = times.length - 1;
+    }
+
+    public void add(float time) {
+        if (size == times.length)
+            resize(times.length * 2);
+        times[(head + size) & mask] = time;
+        size++;
+    }
+
+    /**
+     * @return время первой ноты; очередь не должна быть пустой
+     */
+    public float first() {
+        return times[head];
+    }
+
+    /**
+     * Снимает первую ноту; очередь не должна быть пустой.
+     *
+     * @return время снятой ноты
+     */
+    public float removeFirst() {
+        float time = times[head];
+        head = (head + 1) & mask;
+        size--;
+        return time;
+    }
+
+    /**
+     * @param index номер ноты от начала очереди
+     * @return время ноты
+     */
+    public float get(int index) {
+        return times[(head + index) & mask];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        head = 0;
+        size = 0;
+    }
+
+    /**
+     * Увеличивает буфер, чтобы он вмещал не меньше заданного количества нот.
+     *
+     * @param capacity нужная емкость
+     */
+    public void ensureCapacity(int capacity) {
+        if (capacity > times.length)
+            resize(powerOfTwo(capacity));
+    }
+
+    private void resize(int capacity) {
+        float[] resized = new float[capacity];
+        for (int i = 0; i < size; i++)
+            resized[i] = get(i);
+        times = resized;
+        mask = capacity - 1;
+        head = 0;
+    }
+
+    private static int powerOfTwo(int capacity) {
+        return MathUtils.nextPowerOfTwo(Math.max(capacity, 1));
+    }
+}
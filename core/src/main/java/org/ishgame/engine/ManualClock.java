@@ -0,0 +1,25 @@
+package org.ishgame.engine;
+
+/**
+ * Часы, которые двигаются только вручную; используются для симуляции без окна и музыки.
+ */
+public class ManualClock implements SongClock {
+
+    private float time;
+
+    public ManualClock(float time) {
+        this.time = time;
+    }
+
+    public float getTime() {
+        return time;
+    }
+
+    public void setTime(float time) {
+        this.time = time;
+    }
+
+    public void advance(float deltaTime) {
+        time += deltaTime;
+    }
+}
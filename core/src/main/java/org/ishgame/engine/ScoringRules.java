@@ -0,0 +1,80 @@
+package org.ishgame.engine;
+
+import com.badlogic.gdx.utils.GdxRuntimeException;
+
+/**
+ * Очки и окна попадания для каждой оценки. Игра использует значения из {@link Judgment} ({@link #DEFAULT}),
+ * а пересчет записей игр может задать свои, чтобы сравнить счет при других правилах.
+ * Окна должны расти от PERFECT к ALMOST; MISS не имеет окна и не приносит очков.
+ */
+public final class ScoringRules {
+
+    private static final Judgment[] JUDGMENTS = Judgment.values();
+    // оценки, у которых есть окно попадания (все, кроме MISS)
+    private static final int HIT_JUDGMENTS = JUDGMENTS.length - 1;
+
+    // объявлены после констант выше: они нужны конструктору
+    public static final ScoringRules DEFAULT = new ScoringRules(
+            new int[]{Judgment.PERFECT.points, Judgment.GREAT.points, Judgment.GOOD.points, Judgment.ALMOST.points},
+            new float[]{Judgment.PERFECT.window, Judgment.GREAT.window, Judgment.GOOD.window, Judgment.ALMOST.window});
+
+    private final int[] points;
+    private final float[] windows;
+
+    /**
+     * @param points  очки PERFECT, GREAT, GOOD, ALMOST
+     * @param windows окна попадания PERFECT, GREAT, GOOD, ALMOST в секундах
+     */
+    public ScoringRules(int[] points, float[] windows) {
+        if (points.length != HIT_JUDGMENTS || windows.length != HIT_JUDGMENTS)
+            throw new GdxRuntimeException("Expected " + HIT_JUDGMENTS + " points and windows");
+        for (int i = 1; i < HIT_JUDGMENTS; i++) {
+            if (windows[i] < windows[i - 1])
+                throw new GdxRuntimeException("Hit windows must not shrink: " + windows[i - 1] + " > " + windows[i]);
+        }
+
+        this.points = new int[JUDGMENTS.length];
+        this.windows = new float[JUDGMENTS.length];
+        System.arraycopy(points, 0, this.points, 0, HIT_JUDGMENTS);
+        System.arraycopy(windows, 0, this.windows, 0, HIT_JUDGMENTS);
+        this.windows[Judgment.MISS.ordinal()] = Float.POSITIVE_INFINITY;
+    }
+
+    /**
+     * @param offset разница между временем нажатия и временем ноты в секундах
+     * @return первая оценка, в окно которой попадает разница
+     */
+    public Judgment judge(float offset) {
+        float distance = Math.abs(offset);
+        for (int i = 0; i < HIT_JUDGMENTS; i++) {
+            if (distance <= windows[i])
+                return JUDGMENTS[i];
+        }
+        return Judgment.MISS;
+    }
+
+    public int getPoints(Judgment judgment) {
+        return points[judgment.ordinal()];
+    }
+
+    public float getWindow(Judgment judgment) {
+        return windows[judgment.ordinal()];
+    }
+
+    /**
+     * @return самое широкое окно попадания; нота, время которой прошло больше чем на него, пропущена
+     */
+    public float getLateWindow() {
+        return windows[HIT_JUDGMENTS - 1];
+    }
+
+    public String toString() {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < HIT_JUDGMENTS; i++) {
+            if (i > 0)
+                text.append(", ");
+            text.append(JUDGMENTS[i]).append(' ').append(points[i]).append(" / ").append(windows[i] * 1000).append(" ms");
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,13 @@
+package org.ishgame.engine;
+
+/**
+ * Источник времени мелодии для игровой логики.
+ * Игра берет время из музыки, а симуляция может двигать его вручную ({@link ManualClock}).
+ */
+public interface SongClock {
+
+    /**
+     * @return текущее время мелодии в секундах; отрицательное до начала музыки
+     */
+    float getTime();
+}
@@ -0,0 +1,82 @@
+package org.ishgame.engine;
+
+import com.badlogic.gdx.math.MathUtils;
+
+/**
+ * Все появившиеся ноты всех дорожек в порядке времени: дорожка, время и порядковый номер ноты на своей дорожке.
+ * Служит общим курсором для поиска промахов: ноты снимаются с начала, пока их окно попадания уже закрыто,
+ * поэтому проверка стоит столько, сколько нот снято, а не количество дорожек на каждый кадр.
+ * Ноты, которые уже оценены нажатием, остаются в журнале и пропускаются при снятии.
+ */
+class SpawnLog {
+
+    private int[] columns;
+    private int[] ordinals;
+    private float[] times;
+    private int head;
+    private int mask;
+    private int size;
+
+    SpawnLog(int capacity) {
+        allocate(MathUtils.nextPowerOfTwo(Math.max(capacity, 1)));
+    }
+
+    void add(int column, int ordinal, float time) {
+        if (size == times.length)
+            grow();
+        int index = (head + size) & mask;
+        columns[index] = column;
+        ordinals[index] = ordinal;
+        times[index] = time;
+        size++;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    float firstTime() {
+        return times[head];
+    }
+
+    int firstColumn() {
+        return columns[head];
+    }
+
+    int firstOrdinal() {
+        return ordinals[head];
+    }
+
+    void removeFirst() {
+        head = (head + 1) & mask;
+        size--;
+    }
+
+    void clear() {
+        head = 0;
+        size = 0;
+    }
+
+    private void grow() {
+        int[] oldColumns = columns;
+        int[] oldOrdinals = ordinals;
+        float[] oldTimes = times;
+        int oldMask = mask;
+
+        allocate(oldTimes.length * 2);
+        for (int i = 0; i < size; i++) {
+            int index = (head + i) & oldMask;
+            columns[i] = oldColumns[index];
+            ordinals[i] = oldOrdinals[index];
+            times[i] = oldTimes[index];
+        }
+        head = 0;
+    }
+
+    private void allocate(int capacity) {
+        columns = new int[capacity];
+        ordinals = new int[capacity];
+        times = new float[capacity];
+        mask = capacity - 1;
+    }
+}
@@ -0,0 +1,118 @@
+package org.ishgame.library;
+
+import java.util.Locale;
+
+/**
+ * Сведения об одной мелодии библиотеки, которые показываются при выборе без загрузки самой мелодии.
+ * Размер и время изменения файла запоминаются вместе со сведениями: пока они совпадают с файлом на диске,
+ * мелодия не разбирается заново.
+ */
+public final class SongEntry {
+
+    private final String path;
+    private final long size;
+    private final long modified;
+
+    private final String songName;
+    private final float duration;
+    // -1, если мелодию не удалось разобрать
+    private final int noteCount;
+    private final int laneCount;
+    private final int peakDensity;
+
+    private final String title;
+    // название и музыка в нижнем регистре для поиска
+    private final String searchText;
+
+    /**
+     * @param path        абсолютный путь к файлу мелодии
+     * @param size        размер файла в байтах
+     * @param modified    время изменения файла в миллисекундах
+     * @param songName    файл музыки из заголовка мелодии
+     * @param duration    длительность в секундах
+     * @param noteCount   количество нот или -1 для испорченной мелодии
+     * @param laneCount   количество дорожек
+     * @param peakDensity наибольшее количество нот за одну секунду
+     */
+    public SongEntry(String path, long size, long modified, String songName, float duration, int noteCount,
+                     int laneCount, int peakDensity) {
+        this.path = path;
+        this.size = size;
+        this.modified = modified;
+        this.songName = songName;
+        this.duration = duration;
+        this.noteCount = noteCount;
+        this.laneCount = laneCount;
+        this.peakDensity = peakDensity;
+
+        String name = path.substring(Math.max(path.lastIndexOf('/'), path.lastIndexOf('\\')) + 1);
+        int dot = name.lastIndexOf('.');
+        title = dot > 0 ? name.substring(0, dot) : name;
+        searchText = (title + '\n' + songName).toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * @return сведения об испорченной мелодии; она не разбирается заново, пока файл не изменится
+     */
+    static SongEntry broken(String path, long size, long modified) {
+        return new SongEntry(path, size, modified, "", 0, -1, 0, 0);
+    }
+
+    /**
+     * @return совпадают ли размер и время изменения с файлом на диске
+     */
+    boolean matches(long fileSize, long fileModified) {
+        return size == fileSize && modified == fileModified;
+    }
+
+    /**
+     * @param query строка поиска в нижнем регистре
+     * @return содержат ли название мелодии или файл музыки строку поиска
+     */
+    public boolean matchesQuery(String query) {
+        return searchText.contains(query);
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public long getModified() {
+        return modified;
+    }
+
+    /**
+     * @return имя файла мелодии без расширения
+     */
+    public String getTitle() {
+        return title;
+    }
+
+    public String getSongName() {
+        return songName;
+    }
+
+    public float getDuration() {
+        return duration;
+    }
+
+    public int getNoteCount() {
+        return noteCount;
+    }
+
+    public int getLaneCount() {
+        return laneCount;
+    }
+
+    public int getPeakDensity() {
+        return peakDensity;
+    }
+
+    public boolean isValid() {
+        return noteCount >= 0;
+    }
+}
@@ -0,0 +1,282 @@
+package org.ishgame.library;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.files.FileHandle;
+import com.badlogic.gdx.utils.GdxRuntimeException;
+import org.ishgame.LatencySettings;
+import org.ishgame.SongData;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Библиотека мелодий: все файлы .key и .keyb из папки Levels и папок, заданных в настройках игры.
+ * <br>
+ * Сведения о мелодиях ({@link SongEntry}) хранятся в файле индекса, поэтому при запуске они читаются
+ * одним последовательным чтением, без разбора самих мелодий. Пересканирование в фоновом потоке обходит папки,
+ * берет у каждого файла только размер и время изменения и разбирает заново лишь новые и измененные мелодии
+ * (параллельно). Индекс перезаписывается, только если что-то изменилось.
+ * <br>
+ * Список мелодий публикуется целиком как новый массив, поэтому поток игры читает его без блокировок;
+ * {@link #getVersion()} меняется с каждой публикацией.
+ */
+public class SongLibrary {
+
+    private static final int INDEX_MAGIC = 0x4B45594C; // "KEYL"
+    private static final short INDEX_VERSION = 1;
+
+    public static final String INDEX_FILE = "library.index";
+    public static final String LEVELS_DIRECTORY = "Levels";
+    // дополнительные папки библиотеки в настройках игры, через разделитель путей системы (';' или ':')
+    private static final String DIRECTORIES_KEY = "libraryDirs";
+
+    private static final Comparator<SongEntry> ORDER = Comparator
+            .comparing(SongEntry::getTitle, String.CASE_INSENSITIVE_ORDER)
+            .thenComparing(SongEntry::getPath);
+
+    private final FileHandle indexFile;
+    private final Path[] directories;
+
+    private volatile SongEntry[] entries = new SongEntry[0];
+    private volatile int version;
+    private final AtomicBoolean scanning = new AtomicBoolean();
+
+    /**
+     * @param indexFile   файл индекса
+     * @param directories папки с мелодиями; вложенные папки тоже просматриваются
+     */
+    public SongLibrary(FileHandle indexFile, FileHandle... directories) {
+        this.indexFile = indexFile;
+        this.directories = new Path[directories.length];
+        for (int i = 0; i < directories.length; i++)
+            this.directories[i] = directories[i].file().toPath().toAbsolutePath().normalize();
+    }
+
+    /**
+     * @return библиотека папки Levels и папок из настроек игры с индексом в рабочей папке
+     */
+    public static SongLibrary fromConfig() {
+        ArrayList<FileHandle> directories = new ArrayList<>();
+        directories.add(Gdx.files.local(LEVELS_DIRECTORY));
+        String extra = Gdx.app.getPreferences(LatencySettings.PREFERENCES_NAME).getString(DIRECTORIES_KEY, "");
+        for (String path : extra.split(File.pathSeparator)) {
+            if (!path.trim().isEmpty())
+                directories.add(Gdx.files.absolute(path.trim()));
+        }
+        return new SongLibrary(Gdx.files.local(INDEX_FILE), directories.toArray(new FileHandle[0]));
+    }
+
+    /**
+     * @return мелодии по алфавиту, включая испорченные ({@link SongEntry#isValid()}); массив нельзя менять
+     */
+    public SongEntry[] getEntries() {
+        return entries;
+    }
+
+    /**
+     * @param query строка поиска; пустая строка - все мелодии
+     * @return разобранные мелодии, название или музыка которых содержат строку поиска, по алфавиту
+     */
+    public List<SongEntry> find(String query) {
+        String lowerQuery = query.toLowerCase(Locale.ROOT);
+        ArrayList<SongEntry> result = new ArrayList<>();
+        for (SongEntry entry : entries) {
+            if (entry.isValid() && entry.matchesQuery(lowerQuery))
+                result.add(entry);
+        }
+        return result;
+    }
+
+    /**
+     * @return номер текущего списка мелодий; увеличивается при каждом его обновлении
+     */
+    public int getVersion() {
+        return version;
+    }
+
+    public boolean isScanning() {
+        return scanning.get();
+    }
+
+    /**
+     * Читает список мелодий из индекса. Если индекса нет или он в другом формате, список остается пустым
+     * до пересканирования.
+     */
+    public void load() {
+        if (!indexFile.exists())
+            return;
+
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(indexFile.read(), 65536))) {
+            if (input.readInt() != INDEX_MAGIC || input.readShort() != INDEX_VERSION) {
+                Gdx.app.log("SongLibrary", "Outdated index " + indexFile + ", it will be rebuilt");
+                return;
+            }
+            SongEntry[] loaded = new SongEntry[input.readInt()];
+            for (int i = 0; i < loaded.length; i++) {
+                String path = input.readUTF();
+                long size = input.readLong();
+                long modified = input.readLong();
+                String songName = input.readUTF();
+                float duration = input.readFloat();
+                int noteCount = input.readInt();
+                int laneCount = input.readUnsignedByte();
+                int peakDensity = input.readInt();
+                loaded[i] = new SongEntry(path, size, modified, songName, duration, noteCount, laneCount, peakDensity);
+            }
+            publish(loaded);
+        } catch (IOException | GdxRuntimeException e) {
+            Gdx.app.error("SongLibrary", "Error reading index " + indexFile + ", it will be rebuilt", e);
+        }
+    }
+
+    /**
+     * Запускает пересканирование в фоновом потоке; если оно уже идет, ничего не делает.
+     */
+    public void rescanAsync() {
+        if (!scanning.compareAndSet(false, true))
+            return;
+
+        Thread thread = new Thread(() -> {
+            try {
+                rescan();
+            } catch (RuntimeException e) {
+                Gdx.app.error("SongLibrary", "Rescan failed", e);
+            } finally {
+                scanning.set(false);
+            }
+        }, "song-library");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Обходит папки библиотеки и обновляет список мелодий и индекс.
+     */
+    void rescan() {
+        long start = System.nanoTime();
+
+        HashMap<String, SongEntry> known = new HashMap<>();
+        for (SongEntry entry : entries)
+            known.put(entry.getPath(), entry);
+
+        ArrayList<SongEntry> found = new ArrayList<>(known.size());
+        // новые и измененные файлы: путь, размер и время изменения для разбора
+        ArrayList<SongEntry> changed = new ArrayList<>();
+        for (Path directory : directories) {
+            if (!Files.isDirectory(directory))
+                continue;
+            try {
+                Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+                    public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+                        String name = file.getFileName().toString();
+                        if (!attributes.isRegularFile() || !(name.endsWith(".key") || name.endsWith(".keyb")))
+                            return FileVisitResult.CONTINUE;
+
+                        String path = file.toString();
+                        long size = attributes.size();
+                        long modified = attributes.lastModifiedTime().toMillis();
+                        SongEntry entry = known.remove(path);
+                        if (entry != null && entry.matches(size, modified))
+                            found.add(entry);
+                        else
+                            changed.add(SongEntry.broken(path, size, modified));
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    public FileVisitResult visitFileFailed(Path file, IOException e) {
+                        return FileVisitResult.CONTINUE;
+                    }
+                });
+            } catch (IOException e) {
+                Gdx.app.error("SongLibrary", "Error scanning " + directory, e);
+            }
+        }
+        // оставшиеся в known мелодии удалены с диска (или их папка убрана из настроек)
+        int removed = known.size();
+
+        if (!changed.isEmpty()) {
+            SongEntry[] parsed = changed.parallelStream().map(SongLibrary::readEntry).toArray(SongEntry[]::new);
+            found.addAll(Arrays.asList(parsed));
+        }
+
+        if (!changed.isEmpty() || removed > 0) {
+            SongEntry[] result = found.toArray(new SongEntry[0]);
+            publish(result);
+            writeIndex(result);
+        }
+
+        Gdx.app.log("SongLibrary", "Scanned " + found.size() + " charts (" + changed.size() + " parsed, " + removed
+                + " removed) in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+    }
+
+    /**
+     * Разбирает мелодию целиком, чтобы узнать количество нот и плотность.
+     *
+     * @param stub путь, размер и время изменения файла
+     */
+    private static SongEntry readEntry(SongEntry stub) {
+        FileHandle file = new FileHandle(new File(stub.getPath()));
+        try {
+            SongData chart = new SongData();
+            if (file.extension().equals("keyb"))
+                chart.readFromBinaryFile(file);
+            else
+                chart.readFromFile(file);
+            return new SongEntry(stub.getPath(), stub.getSize(), stub.getModified(), chart.getSongName(),
+                    chart.getSongDuration(), chart.keyTimeCount(), chart.getLaneCount(),
+                    chart.getTimeline().getPeakDensity());
+        } catch (RuntimeException e) {
+            // в текстовой мелодии ошибка может быть в любой строке, поэтому ловятся и ошибки разбора чисел
+            Gdx.app.error("SongLibrary", "Skipping broken chart " + file + ": " + e);
+            return stub;
+        }
+    }
+
+    private synchronized void publish(SongEntry[] list) {
+        Arrays.sort(list, ORDER);
+        entries = list;
+        version++;
+    }
+
+    /**
+     * Записывает индекс во временный файл и заменяет им старый.
+     */
+    private void writeIndex(SongEntry[] list) {
+        FileHandle temp = indexFile.sibling(indexFile.name() + ".tmp");
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(temp.write(false), 65536))) {
+            output.writeInt(INDEX_MAGIC);
+            output.writeShort(INDEX_VERSION);
+            output.writeInt(list.length);
+            for (SongEntry entry : list) {
+                output.writeUTF(entry.getPath());
+                output.writeLong(entry.getSize());
+                output.writeLong(entry.getModified());
+                output.writeUTF(entry.getSongName());
+                output.writeFloat(entry.getDuration());
+                output.writeInt(entry.getNoteCount());
+                output.writeByte(entry.getLaneCount());
+                output.writeInt(entry.getPeakDensity());
+            }
+        } catch (IOException | GdxRuntimeException e) {
+            Gdx.app.error("SongLibrary", "Error writing index " + indexFile, e);
+            return;
+        }
+        SongData.replaceFile(temp, indexFile);
+    }
+}
@@ -0,0 +1,202 @@
+package org.ishgame.replay;
+
+import com.badlogic.gdx.files.FileHandle;
+import com.badlogic.gdx.utils.GdxRuntimeException;
+import org.ishgame.engine.Judgment;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Прочитанная запись игры ({@link ReplayFormat}): заголовок, события и итог, который показала игра.
+ */
+public class Replay {
+
+    private String chartName;
+    private String songName;
+    private int noteCount;
+    private float leadTime;
+    private float audioOffset;
+    private float inputOffset;
+    private String[] laneKeys;
+
+    // события по порядку: вид события и время по часам мелодии в микросекундах
+    private int[] kinds;
+    private long[] times;
+    private int eventCount;
+
+    private boolean finished;
+    private int score;
+    private int maxCombo;
+    private int[] judgmentCounts;
+
+    /**
+     * @param file файл записи .keyr
+     * @return прочитанная запись; запись без итога (игра прервана) читается до последнего целого события
+     */
+    public static Replay read(FileHandle file) {
+        ByteBuffer buffer = ByteBuffer.wrap(file.readBytes());
+        if (buffer.remaining() < 6 || buffer.getInt() != ReplayFormat.MAGIC)
+            throw new GdxRuntimeException("Not a replay: " + file);
+        short version = buffer.getShort();
+        if (version != ReplayFormat.VERSION)
+            throw new GdxRuntimeException("Unsupported replay version " + version + ": " + file);
+
+        Replay replay = new Replay();
+        try {
+            replay.chartName = readString(buffer);
+            replay.songName = readString(buffer);
+            replay.noteCount = buffer.getInt();
+            replay.leadTime = buffer.getFloat();
+            replay.audioOffset = buffer.getFloat();
+            replay.inputOffset = buffer.getFloat();
+            replay.laneKeys = new String[buffer.get()];
+            for (int i = 0; i < replay.laneKeys.length; i++)
+                replay.laneKeys[i] = readString(buffer);
+        } catch (BufferUnderflowException e) {
+            throw new GdxRuntimeException("Truncated replay header: " + file, e);
+        }
+
+        replay.readEvents(buffer);
+        return replay;
+    }
+
+    private void readEvents(ByteBuffer buffer) {
+        kinds = new int[1024];
+        times = new long[1024];
+        long time = 0;
+        try {
+            while (buffer.hasRemaining()) {
+                int kind = (int) readVarint(buffer);
+                if (kind == ReplayFormat.END) {
+                    score = (int) readVarint(buffer);
+                    maxCombo = (int) readVarint(buffer);
+                    judgmentCounts = new int[(int) readVarint(buffer)];
+                    for (int i = 0; i < judgmentCounts.length; i++)
+                        judgmentCounts[i] = (int) readVarint(buffer);
+                    finished = true;
+                    return;
+                }
+
+                long delta = readVarint(buffer);
+                time += (delta >>> 1) ^ -(delta & 1);
+
+                if (eventCount == kinds.length) {
+                    kinds = Arrays.copyOf(kinds, eventCount * 2);
+                    times = Arrays.copyOf(times, eventCount * 2);
+                }
+                kinds[eventCount] = kind;
+                times[eventCount] = time;
+                eventCount++;
+            }
+        } catch (BufferUnderflowException ignored) {
+            // файл оборвался посреди события: оно отбрасывается
+        }
+    }
+
+    private static long readVarint(ByteBuffer buffer) {
+        long value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0)
+                return value;
+        }
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getShort() & 0xFFFF];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    public String getChartName() {
+        return chartName;
+    }
+
+    public String getSongName() {
+        return songName;
+    }
+
+    /**
+     * @return количество нот мелодии при записи или -1, если оно не было известно
+     */
+    public int getNoteCount() {
+        return noteCount;
+    }
+
+    public float getLeadTime() {
+        return leadTime;
+    }
+
+    public float getAudioOffset() {
+        return audioOffset;
+    }
+
+    public float getInputOffset() {
+        return inputOffset;
+    }
+
+    public int getColumnCount() {
+        return laneKeys.length;
+    }
+
+    public String getLaneKey(int column) {
+        return laneKeys[column];
+    }
+
+    /**
+     * @param key название клавиши
+     * @return номер дорожки экрана этой клавиши или -1
+     */
+    public int columnOf(String key) {
+        for (int i = 0; i < laneKeys.length; i++) {
+            if (laneKeys[i].equals(key))
+                return i;
+        }
+        return -1;
+    }
+
+    public int getEventCount() {
+        return eventCount;
+    }
+
+    /**
+     * @return true, если событие - обновление логики кадра
+     */
+    public boolean isTick(int event) {
+        return kinds[event] == ReplayFormat.TICK;
+    }
+
+    /**
+     * @return номер дорожки экрана нажатия
+     */
+    public int getColumn(int event) {
+        return kinds[event] - ReplayFormat.PRESS;
+    }
+
+    public long getTimeMicros(int event) {
+        return times[event];
+    }
+
+    /**
+     * @return true, если игра дошла до конца и итог записан
+     */
+    public boolean isFinished() {
+        return finished;
+    }
+
+    public int getScore() {
+        return score;
+    }
+
+    public int getMaxCombo() {
+        return maxCombo;
+    }
+
+    public int getJudgmentCount(Judgment judgment) {
+        return judgment.ordinal() < judgmentCounts.length ? judgmentCounts[judgment.ordinal()] : 0;
+    }
+}
@@ -0,0 +1,24 @@
+package org.ishgame.replay;
+
+/**
+ * Общие константы двоичного формата записи игры .keyr.
+ * <br>
+ * Заголовок: сигнатура, версия, имя файла мелодии, название музыки, количество нот (-1, если не известно),
+ * leadTime, задержки звука и ввода, клавиши дорожек экрана. Затем идут события: вид события и разница
+ * времени с предыдущим событием в микросекундах по часам мелодии, оба числа в формате varint
+ * (разница - со знаком, zigzag). После события {@link #END} записывается итог игры: счет, наибольшее комбо
+ * и количество каждой оценки. Если игра не закончилась (например, окно закрыли), итога нет.
+ */
+final class ReplayFormat {
+
+    static final int MAGIC = 0x4B455952; // "KEYR"
+    static final short VERSION = 1;
+
+    // виды событий: конец записи, обновление логики кадра и нажатие (к нему прибавляется номер дорожки)
+    static final int END = 0;
+    static final int TICK = 1;
+    static final int PRESS = 2;
+
+    private ReplayFormat() {
+    }
+}
@@ -0,0 +1,219 @@
+package org.ishgame.replay;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.files.FileHandle;
+import org.ishgame.engine.GameplayEngine;
+import org.ishgame.engine.Judgment;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Запись игры в файл .keyr ({@link ReplayFormat}): каждое нажатие и каждое обновление логики
+ * со временем по часам мелодии, в том же порядке, в каком их получил {@link GameplayEngine}.
+ * <br>
+ * Поток игры только кодирует события в заранее выделенные блоки (несколько байт на событие, без выделения памяти);
+ * заполненные блоки записывает на диск фоновый поток, после чего блоки возвращаются в пул.
+ * Обновление кадра занимает несколько байт, и блок заполнялся бы около минуты, поэтому текущий блок
+ * отдается фоновому потоку и раз в {@link #HAND_OFF_INTERVAL_MICROS} времени мелодии: при сбое игры теряется
+ * не больше секунды записи.
+ */
+public class ReplayRecorder {
+
+    private static final int CHUNK_SIZE = 16 * 1024;
+    private static final int CHUNK_COUNT = 8;
+    // как часто недозаполненный блок отдается на запись, в микросекундах времени мелодии
+    private static final long HAND_OFF_INTERVAL_MICROS = 1_000_000;
+
+    // блок записи; длина -1 означает конец записи
+    private static final class Chunk {
+        final byte[] data;
+        int length;
+
+        Chunk(int capacity) {
+            data = new byte[capacity];
+        }
+    }
+
+    private static final Chunk CLOSE = new Chunk(0);
+
+    private final FileHandle file;
+    private final ArrayBlockingQueue<Chunk> freeChunks;
+    private final LinkedBlockingQueue<Chunk> fullChunks;
+    private final Thread thread;
+
+    private Chunk chunk;
+    private long lastMicros;
+    // время мелодии, когда блок последний раз отдавался на запись по времени; MIN_VALUE - еще ни разу
+    private long handOffMicros = Long.MIN_VALUE;
+    private boolean closed;
+
+    /**
+     * Создает файл записи и записывает заголовок.
+     *
+     * @param file        файл записи
+     * @param chartName   имя файла мелодии
+     * @param songName    название музыки из заголовка мелодии
+     * @param noteCount   количество нот или -1, если оно еще не известно
+     * @param leadTime    за сколько секунд до своего времени появляется нота
+     * @param audioOffset сдвиг времени нот, с которым загружена мелодия
+     * @param inputOffset задержка ввода, заданная игровой логике
+     * @param laneKeys    клавиши дорожек экрана слева направо
+     */
+    public ReplayRecorder(FileHandle file, String chartName, String songName, int noteCount, float leadTime,
+                          float audioOffset, float inputOffset, String[] laneKeys) {
+        this.file = file;
+        freeChunks = new ArrayBlockingQueue<>(CHUNK_COUNT);
+        fullChunks = new LinkedBlockingQueue<>();
+        for (int i = 0; i < CHUNK_COUNT; i++)
+            freeChunks.add(new Chunk(CHUNK_SIZE));
+        chunk = freeChunks.poll();
+
+        putInt(ReplayFormat.MAGIC);
+        putShort(ReplayFormat.VERSION);
+        putString(chartName);
+        putString(songName);
+        putInt(noteCount);
+        putInt(Float.floatToIntBits(leadTime));
+        putInt(Float.floatToIntBits(audioOffset));
+        putInt(Float.floatToIntBits(inputOffset));
+        putByte(laneKeys.length);
+        for (String key : laneKeys)
+            putString(key);
+
+        thread = new Thread(this::run, "replay-writer " + file.name());
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Записывает обновление логики кадра.
+     *
+     * @param timeMicros время мелодии в микросекундах, до которого доведена логика
+     */
+    public void tick(long timeMicros) {
+        putEvent(ReplayFormat.TICK, timeMicros);
+        if (!closed && (handOffMicros == Long.MIN_VALUE || timeMicros - handOffMicros >= HAND_OFF_INTERVAL_MICROS)) {
+            handOff();
+            handOffMicros = timeMicros;
+        }
+    }
+
+    /**
+     * Записывает нажатие.
+     *
+     * @param column     номер дорожки экрана
+     * @param timeMicros время нажатия по часам мелодии в микросекундах
+     */
+    public void keyPressed(int column, long timeMicros) {
+        putEvent(ReplayFormat.PRESS + column, timeMicros);
+    }
+
+    /**
+     * Записывает итог игры и закрывает запись. Запись на диск заканчивается в фоне.
+     *
+     * @param engine игровая логика, по которой записаны события
+     */
+    public void finish(GameplayEngine engine) {
+        if (closed)
+            return;
+
+        putVarint(ReplayFormat.END);
+        putVarint(engine.getScore());
+        putVarint(engine.getMaxCombo());
+        Judgment[] judgments = Judgment.values();
+        putVarint(judgments.length);
+        for (Judgment judgment : judgments)
+            putVarint(engine.getJudgmentCount(judgment));
+        close();
+    }
+
+    /**
+     * Закрывает запись без итога (игра прервана).
+     */
+    public void close() {
+        if (closed)
+            return;
+        closed = true;
+        handOff();
+        fullChunks.add(CLOSE);
+    }
+
+    /**
+     * Ждет, пока фоновый поток запишет на диск все блоки закрытой записи.
+     */
+    void awaitWritten() throws InterruptedException {
+        thread.join();
+    }
+
+    private void run() {
+        try (OutputStream output = file.write(false)) {
+            while (true) {
+                Chunk full = fullChunks.take();
+                if (full == CLOSE)
+                    break;
+                output.write(full.data, 0, full.length);
+                full.length = 0;
+                freeChunks.offer(full);
+            }
+        } catch (IOException | RuntimeException e) {
+            Gdx.app.error("ReplayRecorder", "Error writing replay: " + file, e);
+        } catch (InterruptedException ignored) {
+        }
+    }
+
+    private void putEvent(int kind, long timeMicros) {
+        if (closed)
+            return;
+        putVarint(kind);
+        long delta = timeMicros - lastMicros;
+        putVarint((delta << 1) ^ (delta >> 63));
+        lastMicros = timeMicros;
+    }
+
+    /**
+     * Отдает текущий блок фоновому потоку и берет свободный; если фоновый поток отстал, создается новый блок.
+     */
+    private void handOff() {
+        if (chunk.length > 0) {
+            fullChunks.add(chunk);
+            chunk = freeChunks.poll();
+            if (chunk == null)
+                chunk = new Chunk(CHUNK_SIZE);
+        }
+    }
+
+    private void putByte(int value) {
+        if (chunk.length == chunk.data.length)
+            handOff();
+        chunk.data[chunk.length++] = (byte) value;
+    }
+
+    private void putVarint(long value) {
+        while ((value & ~0x7FL) != 0) {
+            putByte((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        putByte((int) value);
+    }
+
+    private void putShort(int value) {
+        putByte(value >> 8);
+        putByte(value);
+    }
+
+    private void putInt(int value) {
+        putShort(value >> 16);
+        putShort(value);
+    }
+
+    private void putString(String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        putShort(bytes.length);
+        for (byte b : bytes)
+            putByte(b);
+    }
+}
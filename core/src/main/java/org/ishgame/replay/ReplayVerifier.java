@@ -0,0 +1,124 @@
+package org.ishgame.replay;
+
+import com.badlogic.gdx.files.FileHandle;
+import org.ishgame.SongCursor;
+import org.ishgame.SongData;
+import org.ishgame.engine.GameplayEngine;
+import org.ishgame.engine.GameplaySimulation;
+import org.ishgame.engine.Judgment;
+import org.ishgame.engine.ManualClock;
+import org.ishgame.engine.ScoringRules;
+
+/**
+ * Проверка записи игры: события записи заново прогоняются через {@link GameplayEngine} без окна и музыки,
+ * и получившийся итог сравнивается с тем, который показала игра. Время нажатий и обновлений берется
+ * из записи с той же точностью, что и в игре, поэтому итог должен совпасть в точности.
+ * <br>
+ * Работает без запуска игры: {@code ReplayVerifier <мелодия.key|.keyb> <запись.keyr>...}
+ */
+public class ReplayVerifier {
+
+    /**
+     * Прогоняет запись через игровую логику с правилами игры.
+     *
+     * @param replay запись игры
+     * @param chart  та же мелодия, загруженная с задержкой звука из записи ({@link Replay#getAudioOffset()})
+     * @return игровая логика после последнего события записи
+     */
+    public static GameplayEngine replay(Replay replay, SongData chart) {
+        return replay(replay, chart, ScoringRules.DEFAULT);
+    }
+
+    /**
+     * Прогоняет запись через игровую логику с заданными правилами. Мелодия не меняется,
+     * поэтому одну мелодию можно использовать из нескольких потоков.
+     *
+     * @param replay запись игры
+     * @param chart  та же мелодия, загруженная с задержкой звука из записи
+     * @param rules  очки и окна попадания
+     * @return игровая логика после последнего события записи
+     */
+    public static GameplayEngine replay(Replay replay, SongData chart, ScoringRules rules) {
+        int[] laneColumns = new int[chart.getLaneCount()];
+        for (int lane = 0; lane < laneColumns.length; lane++)
+            laneColumns[lane] = replay.columnOf(chart.getLaneName(lane));
+
+        ManualClock clock = new ManualClock(-replay.getLeadTime());
+        GameplayEngine engine = new GameplayEngine(new SongCursor(chart), replay.getColumnCount(), laneColumns,
+                replay.getLeadTime(), clock, GameplaySimulation.SILENT, rules);
+        engine.setInputOffset(replay.getInputOffset());
+
+        // время переводится из микросекунд в секунды так же, как это делают часы игры
+        for (int i = 0; i < replay.getEventCount(); i++) {
+            float time = replay.getTimeMicros(i) / 1_000_000f;
+            if (replay.isTick(i)) {
+                clock.setTime(time);
+                engine.update();
+            } else {
+                engine.keyPressed(replay.getColumn(i), time);
+            }
+        }
+        return engine;
+    }
+
+    /**
+     * @return true, если итог прогона совпадает с итогом, записанным игрой
+     */
+    public static boolean matches(Replay replay, GameplayEngine engine) {
+        if (!replay.isFinished() || engine.getScore() != replay.getScore() || engine.getMaxCombo() != replay.getMaxCombo())
+            return false;
+        for (Judgment judgment : Judgment.values()) {
+            if (engine.getJudgmentCount(judgment) != replay.getJudgmentCount(judgment))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * @param file  файл мелодии .key или .keyb
+     * @param timeOffset задержка звука, с которой мелодия загружалась в игре
+     * @return мелодия, загруженная так же, как ее загружает игра
+     */
+    public static SongData loadChart(FileHandle file, float timeOffset) {
+        SongData chart = new SongData();
+        chart.setTimeOffset(timeOffset);
+        if (file.extension().equals("keyb"))
+            chart.readFromBinaryFile(file);
+        else
+            chart.readFromFile(file);
+        return chart;
+    }
+
+    public static void main(String[] args) {
+        if (args.length < 2) {
+            System.out.println("Usage: ReplayVerifier <chart.key|chart.keyb> <replay.keyr>...");
+            return;
+        }
+
+        FileHandle chartFile = new FileHandle(args[0]);
+        int failed = 0;
+        for (int i = 1; i < args.length; i++) {
+            FileHandle file = new FileHandle(args[i]);
+            Replay replay = Replay.read(file);
+            SongData chart = loadChart(chartFile, replay.getAudioOffset());
+            if (replay.getNoteCount() >= 0 && replay.getNoteCount() != chart.keyTimeCount())
+                System.out.println(file.name() + ": chart has " + chart.keyTimeCount() + " notes, replay was recorded with "
+                        + replay.getNoteCount());
+
+            long start = System.nanoTime();
+            GameplayEngine engine = replay(replay, chart);
+            float elapsed = (System.nanoTime() - start) / 1_000_000f;
+
+            boolean ok = matches(replay, engine);
+            if (!ok)
+                failed++;
+            System.out.println(file.name() + ": " + (ok ? "OK" : replay.isFinished() ? "MISMATCH" : "UNFINISHED")
+                    + ", score " + engine.getScore() + " (recorded " + replay.getScore() + "), max combo "
+                    + engine.getMaxCombo() + " (recorded " + replay.getMaxCombo() + "), " + replay.getEventCount()
+                    + " events in " + elapsed + " ms");
+        }
+
+        if (failed > 0)
+            System.exit(1);
+    }
+}
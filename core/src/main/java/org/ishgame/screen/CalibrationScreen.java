@@ -0,0 +1,245 @@
+package org.ishgame.screen;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.Input.Keys;
+import com.badlogic.gdx.audio.Sound;
+import com.badlogic.gdx.scenes.scene2d.Event;
+import com.badlogic.gdx.scenes.scene2d.actions.Actions;
+import com.badlogic.gdx.scenes.scene2d.ui.Label;
+import com.badlogic.gdx.scenes.scene2d.ui.TextButton;
+import com.badlogic.gdx.utils.Align;
+import com.badlogic.gdx.utils.LongArray;
+import com.badlogic.gdx.utils.TimeUtils;
+import org.ishgame.BaseActor;
+import org.ishgame.BaseGame;
+import org.ishgame.BaseScreen;
+import org.ishgame.KeyEventQueue;
+import org.ishgame.LatencyEstimator;
+import org.ishgame.LatencySettings;
+
+/**
+ * Экран калибровки задержек звука и ввода.
+ * <br>
+ * Сначала играет метроном без картинки: игрок нажимает клавишу в такт звуку, и разница между нажатием
+ * и моментом запуска звука включает задержку звука и задержку ввода. Затем кнопка мигает в такт без звука:
+ * разница между нажатием и вспышкой - это задержка ввода (вместе с задержкой изображения).
+ * Задержка звука получается как разность двух оценок. Оценки устойчивы к случайным нажатиям
+ * ({@link LatencyEstimator}) и сохраняются в {@link LatencySettings}.
+ */
+public class CalibrationScreen extends BaseScreen {
+
+    // интервал между ударами метронома в секундах
+    private static final float BEAT_INTERVAL = 0.6f;
+    // первые удары каждой фазы нужны, чтобы поймать ритм, и не учитываются
+    private static final int LEAD_BEATS = 4;
+    private static final int MEASURED_BEATS = 16;
+    // без такого количества нормальных нажатий в каждой фазе результат не сохраняется
+    private static final int MIN_SAMPLES = 8;
+
+    private static final int IDLE = 0;
+    private static final int AUDIO = 1;
+    private static final int VISUAL = 2;
+
+    private int phase;
+    private long phaseStart;
+    private int nextBeat;
+    // моменты ударов и нажатий текущей фазы по TimeUtils.nanoTime
+    private LongArray beatTimes;
+    private LongArray tapTimes;
+
+    private LatencyEstimator audioEstimator;
+    private LatencyEstimator visualEstimator;
+
+    private Sound blip;
+    private Sound tone;
+    private BaseActor flashBox;
+    private Label infoLabel;
+    private TextButton startButton;
+
+    public void initialize() {
+
+        BaseActor background = new BaseActor(0, 0, mainStage);
+        background.loadTexture("lucoa_bg.jpg");
+        background.setSize(1280, 720);
+
+        flashBox = new BaseActor(0, 0, mainStage);
+        flashBox.loadTexture("box.png");
+        flashBox.setScale(2);
+        flashBox.centerAtPosition(640, 360);
+        flashBox.setOpacity(0);
+
+        blip = Gdx.audio.newSound(Gdx.files.internal("blip.wav"));
+        tone = Gdx.audio.newSound(Gdx.files.internal("tone.wav"));
+
+        beatTimes = new LongArray();
+        tapTimes = new LongArray();
+        audioEstimator = new LatencyEstimator();
+        visualEstimator = new LatencyEstimator();
+
+        infoLabel = new Label("", BaseGame.labelStyle);
+        infoLabel.setAlignment(Align.center);
+        showCurrentOffsets();
+
+        startButton = new TextButton("Start", BaseGame.textButtonStyle);
+        startButton.addListener((Event e) -> {
+            if (!isTouchDownEvent(e))
+                return false;
+            startPhase(AUDIO);
+            return true;
+        });
+
+        TextButton backButton = new TextButton("Back", BaseGame.textButtonStyle);
+        backButton.addListener((Event e) -> {
+            if (!isTouchDownEvent(e))
+                return false;
+            returnToGame();
+            return true;
+        });
+
+        uiTable.pad(10);
+        uiTable.add(startButton).width(200).left();
+        uiTable.add().expandX();
+        uiTable.add(backButton).width(200).right();
+        uiTable.row();
+        uiTable.add(infoLabel).colspan(3).expandY();
+    }
+
+    public void update(float dt) {
+
+        processKeyEvents();
+
+        if (phase == IDLE)
+            return;
+
+        long now = TimeUtils.nanoTime();
+        if (nextBeat < LEAD_BEATS + MEASURED_BEATS && now >= beatTime(nextBeat)) {
+            if (phase == AUDIO) {
+                // первый удар каждого такта выделяется другим звуком
+                if (nextBeat % 4 == 0)
+                    tone.play();
+                else
+                    blip.play();
+            } else {
+                flashBox.clearActions();
+                flashBox.addAction(Actions.sequence(Actions.alpha(1), Actions.fadeOut(BEAT_INTERVAL / 2)));
+            }
+            // учитывается момент фактического запуска звука или вспышки, а не плановый
+            beatTimes.add(TimeUtils.nanoTime());
+            nextBeat++;
+        }
+
+        // после последнего удара еще полинтервала ждем опоздавшие нажатия
+        if (nextBeat == LEAD_BEATS + MEASURED_BEATS && now >= beatTime(nextBeat - 1) + seconds(BEAT_INTERVAL / 2))
+            finishPhase();
+    }
+
+    public boolean keyDown(int keycode) {
+        if (keycode == Keys.ESCAPE) {
+            returnToGame();
+            return true;
+        }
+
+        // при перехвате клавиш нажатия приходят через BaseGame.keyEvents
+        if (BaseGame.keyEvents == null)
+            tap(Gdx.input.getCurrentEventTime());
+        return false;
+    }
+
+    public void dispose() {
+        blip.dispose();
+        tone.dispose();
+        super.dispose();
+    }
+
+    private void processKeyEvents() {
+        KeyEventQueue keyEvents = BaseGame.keyEvents;
+        if (keyEvents == null)
+            return;
+
+        while (!keyEvents.isEmpty()) {
+            int keycode = keyEvents.peekKeycode();
+            long time = keyEvents.peekTime();
+            keyEvents.poll();
+
+            if (keycode != Keys.ESCAPE)
+                tap(time);
+        }
+    }
+
+    private void tap(long nanoTime) {
+        if (phase != IDLE)
+            tapTimes.add(nanoTime);
+    }
+
+    private void startPhase(int newPhase) {
+        phase = newPhase;
+        phaseStart = TimeUtils.nanoTime() + seconds(1);
+        nextBeat = 0;
+        beatTimes.clear();
+        tapTimes.clear();
+
+        startButton.setVisible(false);
+        if (phase == AUDIO)
+            infoLabel.setText("Listen and press any key on every beat");
+        else
+            infoLabel.setText("Watch the box and press any key when it flashes");
+    }
+
+    private void finishPhase() {
+        LatencyEstimator estimator = phase == AUDIO ? audioEstimator : visualEstimator;
+        estimator.clear();
+
+        // каждое нажатие сравнивается с ближайшим ударом; вступительные удары и нажатия мимо ритма не учитываются
+        for (int i = 0; i < tapTimes.size; i++) {
+            long tap = tapTimes.get(i);
+            int beat = Math.round((tap - phaseStart) / (float) seconds(BEAT_INTERVAL));
+            if (beat < LEAD_BEATS || beat >= beatTimes.size)
+                continue;
+
+            float offset = (tap - beatTimes.get(beat)) / 1_000_000_000f;
+            if (Math.abs(offset) < BEAT_INTERVAL / 2)
+                estimator.add(offset);
+        }
+
+        if (phase == AUDIO) {
+            startPhase(VISUAL);
+            return;
+        }
+
+        phase = IDLE;
+        startButton.setVisible(true);
+        startButton.setText("Retry");
+
+        if (audioEstimator.inlierCount() < MIN_SAMPLES || visualEstimator.inlierCount() < MIN_SAMPLES) {
+            infoLabel.setText("Not enough taps, please try again");
+            return;
+        }
+
+        float inputOffset = visualEstimator.estimate();
+        float audioOffset = audioEstimator.estimate() - inputOffset;
+        LatencySettings.save(audioOffset, inputOffset);
+
+        Gdx.app.log("CalibrationScreen", "Audio offset " + audioOffset * 1000 + " ms (MAD "
+                + audioEstimator.medianAbsoluteDeviation() * 1000 + " ms), input offset " + inputOffset * 1000
+                + " ms (MAD " + visualEstimator.medianAbsoluteDeviation() * 1000 + " ms)");
+        showCurrentOffsets();
+    }
+
+    private void showCurrentOffsets() {
+        infoLabel.setText("Audio offset: " + Math.round(LatencySettings.getAudioOffset() * 1000) + " ms" + "\n"
+                + "Input offset: " + Math.round(LatencySettings.getInputOffset() * 1000) + " ms");
+    }
+
+    private void returnToGame() {
+        BaseGame.setActiveScreen(new RhythmScreen());
+        dispose();
+    }
+
+    private long beatTime(int beat) {
+        return phaseStart + beat * seconds(BEAT_INTERVAL);
+    }
+
+    private static long seconds(float seconds) {
+        return (long) (seconds * 1_000_000_000L);
+    }
+}
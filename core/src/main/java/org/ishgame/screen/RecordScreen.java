@@ -0,0 +1,286 @@
+package org.ishgame.screen;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.Input.Keys;
+import com.badlogic.gdx.audio.Music;
+import com.badlogic.gdx.files.FileHandle;
+import com.badlogic.gdx.scenes.scene2d.Event;
+import com.badlogic.gdx.scenes.scene2d.ui.Label;
+import com.badlogic.gdx.scenes.scene2d.ui.Table;
+import com.badlogic.gdx.scenes.scene2d.ui.TextButton;
+import com.badlogic.gdx.utils.Align;
+import com.badlogic.gdx.utils.StringBuilder;
+import org.ishgame.BaseActor;
+import org.ishgame.BaseGame;
+import org.ishgame.BaseScreen;
+import org.ishgame.ChartRecorder;
+import org.ishgame.KeyEventQueue;
+import org.ishgame.LaneLayout;
+import org.ishgame.LatencySettings;
+import org.ishgame.MusicClock;
+import org.ishgame.actor.Message;
+import org.ishgame.actor.TargetBox;
+
+import java.io.File;
+import java.util.ArrayList;
+
+import javax.swing.JFileChooser;
+import javax.swing.SwingUtilities;
+
+/**
+ * Экран записи мелодии: играет выбранная музыка, и каждое нажатие клавиши дорожки становится нотой.
+ * Ноты сохраняет {@link ChartRecorder}; готовая мелодия появляется в папке Levels рядом с остальными уровнями.
+ */
+public class RecordScreen extends BaseScreen {
+
+    // обратный отсчет перед началом музыки, как в игре
+    private static final float LEAD_TIME = 4;
+
+    private LaneLayout layout;
+    private ArrayList<TargetBox> targetList;
+    private MusicClock musicClock;
+    private Message message;
+    private Label infoLabel;
+    private TextButton startButton;
+
+    private Music music;
+    private ChartRecorder recorder;
+    private FileHandle chartFile;
+    // нажатие записывается в момент звука, который услышал игрок, поэтому из времени вычитаются обе задержки
+    private float latency;
+
+    // окно выбора музыки открыто; пока оно открыто, кнопка записи не открывает второе
+    private boolean choosing;
+    private boolean disposed;
+
+    private final StringBuilder infoText = new StringBuilder(64);
+    private int shownNotes;
+    private int shownSecond;
+
+    public void initialize() {
+
+        BaseActor background = new BaseActor(0, 0, mainStage);
+        background.loadTexture("lucoa_bg.jpg");
+        background.setSize(1280, 720);
+
+        layout = LaneLayout.fromConfig();
+        Table targetTable = new Table();
+        targetTable.setFillParent(true);
+        targetTable.add().colspan(layout.size()).expandY();
+        targetTable.row();
+        mainStage.addActor(targetTable);
+
+        targetList = new ArrayList<>();
+        for (int i = 0; i < layout.size(); i++) {
+            TargetBox tb = new TargetBox(0, 0, mainStage, layout.getKeyName(i), RhythmScreen.LANE_COLORS[i]);
+            targetList.add(tb);
+            targetTable.add(tb).pad(32);
+        }
+
+        musicClock = new MusicClock(LEAD_TIME);
+
+        message = new Message(0, 0, uiStage);
+        message.setOpacity(0);
+
+        infoLabel = new Label("Choose music and press the lane keys in time", BaseGame.labelStyle);
+        infoLabel.setAlignment(Align.center);
+
+        startButton = new TextButton("Record", BaseGame.textButtonStyle);
+        startButton.addListener((Event e) -> {
+            if (!isTouchDownEvent(e))
+                return false;
+            chooseMusic();
+            return true;
+        });
+
+        TextButton backButton = new TextButton("Back", BaseGame.textButtonStyle);
+        backButton.addListener((Event e) -> {
+            if (!isTouchDownEvent(e))
+                return false;
+            returnToGame();
+            return true;
+        });
+
+        uiTable.pad(10);
+        uiTable.add(startButton).width(200).left();
+        uiTable.add().expandX();
+        uiTable.add(backButton).width(200).right();
+        uiTable.row();
+        uiTable.add(message).colspan(3).expandY();
+        uiTable.row();
+        uiTable.add(infoLabel).colspan(3);
+    }
+
+    public void update(float dt) {
+
+        processKeyEvents();
+
+        if (recorder == null)
+            return;
+
+        musicClock.update();
+        updateInfoLabel();
+
+        // музыка доиграла до конца
+        if (musicClock.getTime() > 0 && !music.isPlaying())
+            finishRecording();
+    }
+
+    public boolean keyDown(int keycode) {
+        if (keycode == Keys.ESCAPE) {
+            returnToGame();
+            return true;
+        }
+
+        // при перехвате клавиш нажатия приходят через BaseGame.keyEvents
+        if (BaseGame.keyEvents == null)
+            pressKey(keycode, Gdx.input.getCurrentEventTime());
+        return false;
+    }
+
+    private void processKeyEvents() {
+        KeyEventQueue keyEvents = BaseGame.keyEvents;
+        if (keyEvents == null)
+            return;
+
+        while (!keyEvents.isEmpty()) {
+            int keycode = keyEvents.peekKeycode();
+            long time = keyEvents.peekTime();
+            keyEvents.poll();
+
+            pressKey(keycode, time);
+        }
+    }
+
+    /**
+     * @param keycode  код нажатой клавиши
+     * @param nanoTime момент нажатия по TimeUtils.nanoTime
+     */
+    private void pressKey(int keycode, long nanoTime) {
+        int lane = layout.laneOf(keycode);
+        if (lane < 0)
+            return;
+
+        targetList.get(lane).pulse();
+        if (recorder == null)
+            return;
+
+        float time = musicClock.getTimeAt(nanoTime) - latency;
+        if (time >= 0)
+            recorder.tap(lane, time);
+    }
+
+    /**
+     * Открывает окно выбора музыки в потоке Swing, чтобы модальное окно не останавливало отрисовку и ввод игры;
+     * выбранный файл передается обратно в поток игры.
+     */
+    private void chooseMusic() {
+        if (choosing || recorder != null)
+            return;
+        choosing = true;
+
+        SwingUtilities.invokeLater(() -> {
+            JFileChooser fileOpen = new JFileChooser();
+            int base = fileOpen.showDialog(null, "Выберите музыку формата .mp3, .ogg или .wav");
+            File musicFile = base == JFileChooser.APPROVE_OPTION ? fileOpen.getSelectedFile() : null;
+            Gdx.app.postRunnable(() -> {
+                choosing = false;
+                if (musicFile != null)
+                    startRecording(musicFile);
+            });
+        });
+    }
+
+    private void startRecording(File musicFile) {
+        // пока выбиралась музыка, игрок мог уйти с экрана
+        if (recorder != null || disposed)
+            return;
+
+        music = Gdx.audio.newMusic(Gdx.files.absolute(musicFile.getPath()));
+        chartFile = newChartFile(musicFile);
+        recorder = new ChartRecorder(chartFile, songName(musicFile), layout.getKeyNames());
+        latency = LatencySettings.getAudioOffset() + LatencySettings.getInputOffset();
+
+        startButton.setVisible(false);
+        shownNotes = -1;
+        shownSecond = -1;
+        message.displayCountdown();
+        musicClock.start(music);
+    }
+
+    private void finishRecording() {
+        int notes = recorder.getNoteCount();
+        recorder.finish(musicClock.getTime());
+        recorder = null;
+        music.stop();
+        music.dispose();
+        music = null;
+
+        startButton.setVisible(true);
+        // пустая запись (например, прерванная во время отсчета) не сохраняется
+        if (notes == 0) {
+            infoLabel.setText("Nothing recorded");
+            return;
+        }
+        message.displayCongratulations();
+        infoLabel.setText("Saved to " + chartFile.path());
+    }
+
+    private void updateInfoLabel() {
+        int notes = recorder.getNoteCount();
+        int second = (int) Math.max(musicClock.getTime(), 0);
+        if (notes == shownNotes && second == shownSecond)
+            return;
+        shownNotes = notes;
+        shownSecond = second;
+
+        infoText.setLength(0);
+        infoText.append("Recording: ").append(second).append(" s, ").append(notes).append(" notes");
+        infoLabel.setText(infoText);
+    }
+
+    /**
+     * @return путь к музыке относительно рабочей папки игры (как в готовых уровнях) или абсолютный путь
+     */
+    private static String songName(File musicFile) {
+        String workingDir = new File("").getAbsolutePath() + File.separator;
+        String path = musicFile.getAbsolutePath();
+        if (path.startsWith(workingDir))
+            path = path.substring(workingDir.length());
+        return path.replace(File.separatorChar, '/');
+    }
+
+    /**
+     * @return файл новой мелодии в папке Levels; существующие мелодии не перезаписываются
+     */
+    private static FileHandle newChartFile(File musicFile) {
+        String name = musicFile.getName();
+        int dot = name.lastIndexOf('.');
+        if (dot > 0)
+            name = name.substring(0, dot);
+
+        FileHandle levels = Gdx.files.local("Levels");
+        levels.mkdirs();
+        FileHandle file = levels.child(name + ".key");
+        for (int i = 2; file.exists(); i++)
+            file = levels.child(name + "-" + i + ".key");
+        return file;
+    }
+
+    /**
+     * Возвращает к игре; незаконченная запись сохраняется как есть.
+     */
+    private void returnToGame() {
+        if (recorder != null)
+            finishRecording();
+        BaseGame.setActiveScreen(new RhythmScreen());
+        dispose();
+    }
+
+    public void dispose() {
+        disposed = true;
+        if (music != null)
+            music.dispose();
+        super.dispose();
+    }
+}
@@ -1,55 +1,110 @@
 package org.ishgame.screen;
 
 import com.badlogic.gdx.Gdx;
-import com.badlogic.gdx.Input.Keys;
+import com.badlogic.gdx.assets.AssetManager;
+import com.badlogic.gdx.assets.loaders.resolvers.AbsoluteFileHandleResolver;
 import com.badlogic.gdx.audio.Music;
 import com.badlogic.gdx.files.FileHandle;
 import com.badlogic.gdx.graphics.Color;
 import com.badlogic.gdx.scenes.scene2d.Event;
+import com.badlogic.gdx.scenes.scene2d.Touchable;
 import com.badlogic.gdx.scenes.scene2d.ui.Label;
 import com.badlogic.gdx.scenes.scene2d.ui.Table;
 import com.badlogic.gdx.scenes.scene2d.ui.TextButton;
 import com.badlogic.gdx.utils.Align;
+import com.badlogic.gdx.utils.StringBuilder;
+import com.badlogic.gdx.utils.TimeUtils;
 import org.ishgame.BaseActor;
 import org.ishgame.BaseGame;
 import org.ishgame.BaseScreen;
-import org.ishgame.SongData;
+import org.ishgame.ChartLoader;
+import org.ishgame.ChartTimeline;
+import org.ishgame.KeyEventQueue;
+import org.ishgame.LaneLayout;
+import org.ishgame.LatencySettings;
+import org.ishgame.MusicClock;
+import org.ishgame.NoteSource;
 import org.ishgame.actor.FallingBox;
+import org.ishgame.actor.FallingBoxPool;
 import org.ishgame.actor.Message;
+import org.ishgame.actor.NoteLaneRenderer;
 import org.ishgame.actor.TargetBox;
+import org.ishgame.engine.GameplayEngine;
+import org.ishgame.engine.GameplayListener;
+import org.ishgame.engine.Judgment;
+import org.ishgame.replay.ReplayRecorder;
 
-import java.io.File;
 import java.util.ArrayList;
-import java.util.Collections;
 
-import javax.swing.JFileChooser;
+public class RhythmScreen extends BaseScreen implements GameplayListener { //
 
-public class RhythmScreen extends BaseScreen { //
+    // цвета дорожек слева направо; первые четыре - прежние цвета раскладки ASDF
+    static final Color[] LANE_COLORS = {Color.RED, Color.YELLOW, Color.GREEN, Color.BLUE, Color.ORANGE,
+            Color.CYAN, Color.MAGENTA, Color.LIME, Color.PURPLE, Color.WHITE};
 
-    private ArrayList<String> keyList;
-    private ArrayList<Color> colorList;
+    // раскладка из настроек игры и раскладка текущей мелодии (своя или та же)
+    private LaneLayout configLayout;
+    private LaneLayout layout;
+    private Table targetTable;
     private ArrayList<TargetBox> targetList;
-    private ArrayList<ArrayList<FallingBox>> fallingLists;
+    // номер дорожки из мелодии -> номер кнопки на экране
+    private int[] laneColumns;
+    // падающие тайлы рисуются одним проходом; FallingBox остался только для анимации исчезновения
+    private NoteLaneRenderer noteRenderer;
+    private FallingBoxPool fallingBoxPool;
 
     private Music gameMusic;
-    private SongData songData;
-    private JFileChooser fileOpen;
+    private NoteSource songData;
+    private AssetManager assetManager;
+    private String chartPath;
+    // задержка звука, с которой загружена мелодия; нужна для записи игры
+    private float chartTimeOffset;
+    private boolean loading;
+    // момент нажатия Start; используется для измерения времени до первого кадра игры
+    private long loadStartTime;
 
     // сколько секунд до того, как NoteBox достигнет TargetBox
     private final float leadTime = 4;
-    // advanceTimer устанавливается в положение leadTime на несколько секунд раньше позиции музыкального времени
-    private float advanceTimer;
+    // на сколько секунд дальше leadTime потоковое чтение держит ноты в памяти
+    private final float streamingMargin = 2;
+    // время мелодии: обратный отсчет длиной leadTime, затем сглаженная позиция музыки
+    private MusicClock musicClock;
     private float spawnHeight;
+    // высота, на которой тайл пересекает кнопку
+    private float targetHeight;
     private float noteSpeed;
 
+    private GameplayEngine engine;
+    // запись текущей игры; все, что получает игровая логика, записывается в том же порядке
+    private ReplayRecorder replay;
+
     private Message message;
     private Label scoreLabel;
-    private int score;
     private int maxScore;
     private Label timeLabel;
     private float songDuration;
-    private FileHandle dataFileHandle;
-    private FileHandle songFileHandle;
+    // сведения о мелодии для счета и темпа; null у потоковой мелодии
+    private ChartTimeline timeline;
+    // текст надписей собирается в одном буфере, чтобы не создавать строки на каждое нажатие и кадр
+    private final StringBuilder hudText = new StringBuilder(64);
+    // значения, которые сейчас показаны; надпись обновляется, только когда они меняются
+    private int shownScore;
+    private int shownMaxScore;
+    private int shownPace;
+    private int shownSecond;
+    private TextButton startButton;
+    private TextButton calibrateButton;
+    private TextButton recordButton;
+
+    public RhythmScreen() {
+    }
+
+    /**
+     * @param chartPath абсолютный путь к мелодии, которая начинается сразу
+     */
+    public RhythmScreen(String chartPath) {
+        loadChart(chartPath);
+    }
 
     public void initialize() { //инициализация цвета, заднего фона, кнопок, и тд
 
@@ -58,63 +113,51 @@ public class RhythmScreen extends BaseScreen { //
         background.setSize(1280, 720);
         BaseActor.setWorldBounds(background);
 
-        keyList = new ArrayList<>();
-        String[] keyArray = {"A", "S", "D", "F"};
-        Collections.addAll(keyList, keyArray);
-
-        colorList = new ArrayList<>();
-        Color[] colorArray = {Color.RED, Color.YELLOW, Color.GREEN, Color.BLUE};
-        Collections.addAll(colorList, colorArray);
-
-        Table targetTable = new Table();
+        targetTable = new Table();
         targetTable.setFillParent(true);
-        targetTable.add().colspan(4).expandY();
-        targetTable.row();
         mainStage.addActor(targetTable);
-
         targetList = new ArrayList<>();
-        for (int i = 0; i < 4; i++) {
-            TargetBox tb = new TargetBox(0, 0, mainStage, keyList.get(i), colorList.get(i));
-            targetList.add(tb);
-            targetTable.add(tb).pad(32);
-        }
 
-        fallingLists = new ArrayList<>();
-        for (int i = 0; i < 4; i++) {
-            fallingLists.add(new ArrayList<>());
-        }
+        // дорожек у рендерера столько, сколько может быть в раскладке; лишние просто пустуют
+        noteRenderer = new NoteLaneRenderer(mainStage, "box.png", 0.75f, LaneLayout.MAX_LANES);
+        fallingBoxPool = new FallingBoxPool(mainStage);
 
-        advanceTimer = 0;
+        musicClock = new MusicClock(leadTime);
         spawnHeight = 650;
-        noteSpeed = (spawnHeight - targetList.get(0).getY()) / leadTime;
 
-        TextButton startButton = new TextButton("Start", BaseGame.textButtonStyle);
+        configLayout = LaneLayout.fromConfig();
+        setLayout(configLayout);
+
+        assetManager = new AssetManager();
+        assetManager.setLoader(NoteSource.class, new ChartLoader(new AbsoluteFileHandleResolver()));
+
+        startButton = new TextButton("Start", BaseGame.textButtonStyle);
         startButton.addListener((Event e) -> {
-            if (!isTouchDownEvent(e))
+            if (!isTouchDownEvent(e) || loading)
+                return false;
+
+            BaseGame.setActiveScreen(new SongSelectScreen());
+            dispose();
+            return true;
+        });
+
+        calibrateButton = new TextButton("Calibrate", BaseGame.textButtonStyle);
+        calibrateButton.addListener((Event e) -> {
+            if (!isTouchDownEvent(e) || loading)
                 return false;
 
-            fileOpen = new JFileChooser();
-            int base = fileOpen.showDialog(null, "Выберите файл формата .key");
-            if (base == JFileChooser.APPROVE_OPTION){
-                File file = fileOpen.getSelectedFile();
-                String filePath = file.getPath();
-                dataFileHandle = Gdx.files.internal(filePath);
-            }
-            songData = new SongData();
-            songData.readFromFile(dataFileHandle);
-            songData.resetIndex();
-
-            songFileHandle = Gdx.files.internal(songData.getSongName());
-            gameMusic = Gdx.audio.newMusic(songFileHandle);
-            startButton.setVisible(false);
-
-            songDuration = songData.getSongDuration();
-            score = 0;
-            maxScore = 100 * songData.keyTimeCount();
-            scoreLabel.setText("Score: " + score + "\n" + "Max: " + maxScore);
-            timeLabel.setText("Time: " + 0 + "\n" + "End: " + (int) songDuration);
-
-            message.displayCountdown();
+            BaseGame.setActiveScreen(new CalibrationScreen());
+            dispose();
+            return true;
+        });
+
+        recordButton = new TextButton("Record", BaseGame.textButtonStyle);
+        recordButton.addListener((Event e) -> {
+            if (!isTouchDownEvent(e) || loading)
+                return false;
+
+            BaseGame.setActiveScreen(new RecordScreen());
+            dispose();
             return true;
         });
 
@@ -133,105 +176,283 @@ public class RhythmScreen extends BaseScreen { //
         uiTable.add(scoreLabel).width(200).right();
         uiTable.row();
         uiTable.add(message).colspan(3).expandX().expandY();
+        uiTable.row();
+        uiTable.add(calibrateButton).width(200).left();
+        uiTable.add();
+        uiTable.add(recordButton).width(200).right();
+    }
+
+    /**
+     * Загружает мелодию и начинает игру.
+     *
+     * @param chartPath абсолютный путь к мелодии, выбранной в библиотеке
+     */
+    private void loadChart(String chartPath) {
+        this.chartPath = chartPath;
+
+        // мелодия, музыка и ее зависимости загружаются в фоне; прогресс показывается на кнопке
+        ChartLoader.ChartParameter parameter = new ChartLoader.ChartParameter();
+        parameter.laneNames = configLayout.getKeyNames();
+        parameter.streamingWindow = leadTime + streamingMargin;
+        parameter.timeOffset = LatencySettings.getAudioOffset();
+        assetManager.load(chartPath, NoteSource.class, parameter);
+        chartTimeOffset = parameter.timeOffset;
+
+        loadStartTime = TimeUtils.nanoTime();
+        loading = true;
+        startButton.setTouchable(Touchable.disabled);
+        startButton.setText("0%");
     }
 
     public void update(float dt) { //логика апдейтов
 
-        if (songData == null)
-            return;
+        // нажатия из перехвата клавиш оцениваются до обновления логики кадра
+        processKeyEvents();
 
-        if (advanceTimer < leadTime && advanceTimer + dt > leadTime)
-            gameMusic.play();
+        if (loading) {
+            if (assetManager.update())
+                startSong();
+            else
+                startButton.setText((int) (assetManager.getProgress() * 100) + "%");
+            return;
+        }
 
-        if (advanceTimer < leadTime)
-            advanceTimer += dt;
-        else
-            advanceTimer = leadTime + gameMusic.getPosition();
+        if (loadStartTime != 0) {
+            // к этому моменту первый кадр после загрузки всех ресурсов уже отрисован
+            float elapsed = TimeUtils.timeSinceNanos(loadStartTime) / 1_000_000f;
+            Gdx.app.log("RhythmScreen", "Time to first frame: " + elapsed + " ms");
+            loadStartTime = 0;
+        }
 
-        while (!songData.isFinished() && advanceTimer >= songData.getCurrentKeyTime().getTime()) {
-            String key = songData.getCurrentKeyTime().getKey();
-            int i = keyList.indexOf(key);
+        if (songData == null)
+            return;
 
-            FallingBox fb = new FallingBox(targetList.get(i).getX(), spawnHeight, mainStage);
-            fb.setSpeed(noteSpeed);
-            fb.setMotionAngle(270);
-            fb.setColor(colorList.get(i));
+        musicClock.update();
 
-            fallingLists.get(i).add(fb);
+        // появление нот и промахи; тайлы расставляются по этому же времени при отрисовке
+        noteRenderer.setSongTime(musicClock.getTime());
+        replay.tick(musicClock.getTimeMicros());
+        engine.update();
 
-            songData.advanceIndex();
-        }
+        if (maxScore < 0 && songData.keyTimeCount() >= 0)
+            maxScore = Judgment.PERFECT.points * songData.keyTimeCount();
+        updateScoreLabel();
 
         if (gameMusic.isPlaying())
-            timeLabel.setText("Time: " + (int) gameMusic.getPosition() + "\n" + "End: " + (int) songDuration);
-
-        // убирает объекты класса FallingBox которые прошли ниже кнопок с буквами
-        for (int i = 0; i < 4; i++) {
-            ArrayList<FallingBox> fallingList = fallingLists.get(i);
-            if (fallingList.size() > 0) {
-                FallingBox fb = fallingList.get(0);
-                TargetBox tb = targetList.get(i);
-                if (fb.getY() < tb.getY() && !fb.overlaps(tb)) {
-                    message.setAnimation(message.miss);
-                    message.pulseFade();
-                    fallingList.remove(fb);
-                    fb.setSpeed(0);
-                    fb.flashOut();
-                }
-            }
-        }
+            updateTimeLabel((int) gameMusic.getPosition());
 
         if (songData.isFinished() && !gameMusic.isPlaying()) {
             message.displayCongratulations();
+            replay.finish(engine);
+            replay = null;
+            Gdx.app.log("RhythmScreen", "Clock drift: max " + musicClock.getMaxDriftMicros() / 1000f + " ms, corrected "
+                    + musicClock.getTotalCorrectionMicros() / 1000f + " ms over " + musicClock.getReportCount()
+                    + " reports, " + musicClock.getSnapCount() + " snaps");
+            // выгружает мелодию вместе с музыкой
+            assetManager.unload(chartPath);
             songData = null;
         }
     }
 
+    /**
+     * Вызывается, когда мелодия и музыка загружены; подготавливает игру и запускает обратный отсчет.
+     */
+    private void startSong() {
+        loading = false;
+
+        songData = assetManager.get(chartPath, NoteSource.class);
+        gameMusic = assetManager.get(songData.getSongName(), Music.class);
+
+        // мелодия со своей раскладкой перестраивает кнопки; номера дорожек находятся один раз, до начала игры
+        LaneLayout chartLayout = LaneLayout.forChart(songData, configLayout);
+        if (chartLayout != layout)
+            setLayout(chartLayout);
+
+        laneColumns = new int[songData.getLaneCount()];
+        for (int lane = 0; lane < laneColumns.length; lane++)
+            laneColumns[lane] = layout.indexOf(songData.getLaneName(lane));
+
+        float inputOffset = LatencySettings.getInputOffset();
+        engine = new GameplayEngine(songData, layout.size(), laneColumns, leadTime, musicClock, this);
+        engine.setInputOffset(inputOffset);
+
+        String chartName = Gdx.files.absolute(chartPath).name();
+        FileHandle replayFile = Gdx.files.local("replays/" + Gdx.files.absolute(chartPath).nameWithoutExtension()
+                + "-" + TimeUtils.millis() + ".keyr");
+        replay = new ReplayRecorder(replayFile, chartName, songData.getSongName(), songData.keyTimeCount(), leadTime,
+                chartTimeOffset, inputOffset, layout.getKeyNames());
+        // нота может быть оценена за leadTime до своего времени и не позже окна ALMOST после него
+        int peakNotes = songData.peakNoteCount(leadTime + Judgment.ALMOST.window);
+        noteRenderer.clearNotes(peakNotes);
+        fallingBoxPool.prewarm(songData.peakNoteCount(leadTime + Judgment.ALMOST.window + FallingBox.FLASH_DURATION));
+
+        startButton.setVisible(false);
+        calibrateButton.setVisible(false);
+        recordButton.setVisible(false);
+
+        songDuration = songData.getSongDuration();
+        // наибольший счет известен сразу из сведений о мелодии; у потоковой мелодии количество нот становится известно не сразу
+        timeline = songData.getTimeline();
+        if (timeline != null)
+            maxScore = timeline.getMaxScore();
+        else
+            maxScore = songData.keyTimeCount() < 0 ? -1 : Judgment.PERFECT.points * songData.keyTimeCount();
+        shownScore = -1;
+        updateScoreLabel();
+        shownSecond = -1;
+        updateTimeLabel(0);
+
+        message.displayCountdown();
+        musicClock.start(gameMusic);
+    }
+
     public boolean keyDown(int keycode) { //обрабатывает нажатие на кнопку
 
-        if (songData == null)
+        // при перехвате клавиш нажатия приходят через BaseGame.keyEvents
+        if (songData == null || BaseGame.keyEvents != null)
             return false;
 
-        String keyString = Keys.toString(keycode);
-
-        if (keyList.contains(keyString)) {
-            int i = keyList.indexOf(keyString);
-            TargetBox tb = targetList.get(i);
-            tb.pulse();
-            ArrayList<FallingBox> fallingList = fallingLists.get(i);
-
-            if (fallingList.size() == 0) {
-                message.setAnimation(message.miss);
-                message.pulseFade();
-            } else {
-                FallingBox fb = fallingList.get(0);
-                float distance = Math.abs(fb.getY() - tb.getY());
-
-                if (distance < 8) {
-                    message.setAnimation(message.perfect);
-                    score += 100;
-                } else if (distance < 16) {
-                    message.setAnimation(message.great);
-                    score += 80;
-                } else if (distance < 24) {
-                    message.setAnimation(message.good);
-                    score += 50;
-                } else if (distance < 32) {
-                    message.setAnimation(message.almost);
-                    score += 20;
-                } else {
-                    message.setAnimation(message.miss);
-                }
-
-                message.pulseFade();
-                scoreLabel.setText("Score: " + score + "\n" + "Max: " + maxScore);
-
-                fallingList.remove(fb);
-                fb.setSpeed(0);
-                fb.flashOut();
-            }
+        pressKey(keycode, Gdx.input.getCurrentEventTime());
+        return false;
+    }
+
+    /**
+     * Разбирает очередь перехваченных нажатий; нажатия вне игры отбрасываются.
+     */
+    private void processKeyEvents() {
+        KeyEventQueue keyEvents = BaseGame.keyEvents;
+        if (keyEvents == null)
+            return;
+
+        while (!keyEvents.isEmpty()) {
+            int keycode = keyEvents.peekKeycode();
+            long time = keyEvents.peekTime();
+            keyEvents.poll();
+
+            if (songData != null && !loading)
+                pressKey(keycode, time);
         }
+    }
 
-        return false;
+    /**
+     * @param keycode  код нажатой клавиши
+     * @param nanoTime момент нажатия по TimeUtils.nanoTime
+     */
+    private void pressKey(int keycode, long nanoTime) {
+        int lane = layout.laneOf(keycode);
+        if (lane < 0)
+            return;
+
+        targetList.get(lane).pulse();
+        // нажатие оценивается по моменту, когда клавишу нажали, а не по началу кадра, в котором оно обработано;
+        // время округляется до микросекунд, чтобы запись игры воспроизводила оценку в точности
+        long timeMicros = musicClock.getTimeMicrosAt(nanoTime);
+        replay.keyPressed(lane, timeMicros);
+        engine.keyPressed(lane, timeMicros / 1_000_000f);
+    }
+
+    /**
+     * Расставляет кнопки по раскладке и настраивает по ним дорожки и высоту, на которой тайлы пересекают кнопки.
+     *
+     * @param newLayout раскладка клавиш
+     */
+    private void setLayout(LaneLayout newLayout) {
+        layout = newLayout;
+
+        for (TargetBox tb : targetList)
+            tb.remove();
+        targetList.clear();
+        targetTable.clearChildren();
+
+        targetTable.add().colspan(layout.size()).expandY();
+        targetTable.row();
+        for (int i = 0; i < layout.size(); i++) {
+            TargetBox tb = new TargetBox(0, 0, mainStage, layout.getKeyName(i), LANE_COLORS[i]);
+            targetList.add(tb);
+            targetTable.add(tb).pad(32);
+        }
+
+        // таблица расставляется сразу, чтобы взять настоящие координаты кнопок
+        targetTable.validate();
+        for (int i = 0; i < targetList.size(); i++)
+            noteRenderer.setLane(i, targetList.get(i).getX(), LANE_COLORS[i]);
+        targetHeight = targetList.get(0).getY();
+        noteSpeed = (spawnHeight - targetHeight) / leadTime;
+        noteRenderer.setTimeline(targetHeight, noteSpeed);
+    }
+
+    public void dispose() {
+        if (replay != null)
+            replay.close();
+        assetManager.dispose();
+        noteRenderer.dispose();
+        super.dispose();
+    }
+
+    public void noteSpawned(int lane, float time) {
+        noteRenderer.addNote(lane, time);
+    }
+
+    public void noteHit(int lane, Judgment judgment) {
+        message.showJudgment(judgment);
+        removeFirstBox(lane);
+    }
+
+    public void noteMissed(int lane) {
+        message.showJudgment(Judgment.MISS);
+        removeFirstBox(lane);
+    }
+
+    public void emptyPress(int lane) {
+        message.showJudgment(Judgment.MISS);
+    }
+
+    private void removeFirstBox(int lane) {
+        float time = noteRenderer.removeFirstNote(lane);
+        // на месте оцененной ноты проигрывается анимация исчезновения
+        FallingBox fb = fallingBoxPool.obtain(noteRenderer.getLaneX(lane), noteRenderer.getNoteY(time));
+        fb.setColor(LANE_COLORS[lane]);
+        fb.flashOut();
+    }
+
+    /**
+     * Обновляет счет, наибольший счет и темп. Темп - доля счета от наибольшего счета на нотах, окно которых уже закрылось
+     * (ноты, по которым еще можно попасть, не учитываются).
+     */
+    private void updateScoreLabel() {
+        int score = engine.getScore();
+        int pace = -1;
+        if (timeline != null) {
+            int maxScoreSoFar = timeline.getMaxScoreAt(musicClock.getTime() - Judgment.ALMOST.window);
+            pace = maxScoreSoFar == 0 ? 100 : Math.min(100, score * 100 / maxScoreSoFar);
+        }
+        if (score == shownScore && maxScore == shownMaxScore && pace == shownPace)
+            return;
+        shownScore = score;
+        shownMaxScore = maxScore;
+        shownPace = pace;
+
+        hudText.setLength(0);
+        hudText.append("Score: ").append(score).append('\n').append("Max: ");
+        if (maxScore < 0)
+            hudText.append('?');
+        else
+            hudText.append(maxScore);
+        if (pace >= 0)
+            hudText.append('\n').append("Pace: ").append(pace).append('%');
+        scoreLabel.setText(hudText);
+    }
+
+    /**
+     * @param second текущая секунда музыки
+     */
+    private void updateTimeLabel(int second) {
+        if (second == shownSecond)
+            return;
+        shownSecond = second;
+
+        hudText.setLength(0);
+        hudText.append("Time: ").append(second).append('\n').append("End: ").append((int) songDuration);
+        timeLabel.setText(hudText);
     }
 }
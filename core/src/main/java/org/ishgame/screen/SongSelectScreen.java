@@ -0,0 +1,268 @@
+package org.ishgame.screen;
+
+import com.badlogic.gdx.Input.Keys;
+import com.badlogic.gdx.scenes.scene2d.Event;
+import com.badlogic.gdx.scenes.scene2d.ui.Label;
+import com.badlogic.gdx.scenes.scene2d.ui.Table;
+import com.badlogic.gdx.scenes.scene2d.ui.TextButton;
+import com.badlogic.gdx.utils.Align;
+import com.badlogic.gdx.utils.StringBuilder;
+import org.ishgame.BaseActor;
+import org.ishgame.BaseGame;
+import org.ishgame.BaseScreen;
+import org.ishgame.KeyEventQueue;
+import org.ishgame.RhythmGame;
+import org.ishgame.library.SongEntry;
+import org.ishgame.library.SongLibrary;
+
+import java.util.List;
+
+/**
+ * Экран выбора мелодии из библиотеки ({@link SongLibrary}).
+ * <br>
+ * На экране видна одна страница списка из {@link #ROWS} строк; кнопки строк создаются один раз и только меняют текст,
+ * поэтому список может быть сколь угодно длинным. Набор букв ищет по названию мелодии и музыки,
+ * стрелки и колесо мыши двигают выбор, Enter или щелчок по строке запускают мелодию.
+ * Пока библиотека пересканируется в фоне, список обновляется сам.
+ */
+public class SongSelectScreen extends BaseScreen {
+
+    private static final int ROWS = 8;
+    // длиннее названия обрезаются, чтобы строка помещалась на экран
+    private static final int MAX_TITLE_LENGTH = 40;
+
+    private SongLibrary library;
+    private int shownVersion;
+    private List<SongEntry> results;
+    private int selected;
+    // номер мелодии в первой строке страницы
+    private int first;
+
+    // строка поиска и буфер текста надписей; создаются в initialize, которая вызывается раньше инициализаторов полей
+    private StringBuilder query;
+    private StringBuilder text;
+
+    private TextButton[] rows;
+    private Label queryLabel;
+    private Label infoLabel;
+    private Label statusLabel;
+    private boolean shownScanning;
+
+    public void initialize() {
+
+        BaseActor background = new BaseActor(0, 0, mainStage);
+        background.loadTexture("lucoa_bg.jpg");
+        background.setSize(1280, 720);
+
+        query = new StringBuilder();
+        text = new StringBuilder(128);
+
+        library = RhythmGame.songLibrary;
+        // новые мелодии (например, записанные в игре) подхватываются при каждом открытии экрана
+        library.rescanAsync();
+
+        queryLabel = new Label("", BaseGame.labelStyle);
+        infoLabel = new Label("", BaseGame.labelStyle);
+        infoLabel.setAlignment(Align.center);
+        statusLabel = new Label("", BaseGame.labelStyle);
+        statusLabel.setAlignment(Align.right);
+
+        TextButton rescanButton = new TextButton("Rescan", BaseGame.textButtonStyle);
+        rescanButton.addListener((Event e) -> {
+            if (!isTouchDownEvent(e))
+                return false;
+            library.rescanAsync();
+            return true;
+        });
+
+        TextButton backButton = new TextButton("Back", BaseGame.textButtonStyle);
+        backButton.addListener((Event e) -> {
+            if (!isTouchDownEvent(e))
+                return false;
+            returnToGame();
+            return true;
+        });
+
+        Table list = new Table();
+        rows = new TextButton[ROWS];
+        for (int i = 0; i < ROWS; i++) {
+            int row = i;
+            rows[i] = new TextButton("", BaseGame.textButtonStyle);
+            rows[i].getLabel().setAlignment(Align.left);
+            rows[i].addListener((Event e) -> {
+                if (!isTouchDownEvent(e) || first + row >= results.size())
+                    return false;
+                selected = first + row;
+                startSelected();
+                return true;
+            });
+            list.add(rows[i]).width(900).height(56).pad(2);
+            list.row();
+        }
+
+        uiTable.pad(10);
+        uiTable.add(queryLabel).expandX().left();
+        uiTable.add(rescanButton).width(200).right();
+        uiTable.add(backButton).width(200).right();
+        uiTable.row();
+        uiTable.add(list).colspan(3).expandY();
+        uiTable.row();
+        uiTable.add(infoLabel).colspan(3);
+        uiTable.row();
+        uiTable.add(statusLabel).colspan(3).right();
+
+        shownVersion = -1;
+        refreshResults();
+    }
+
+    public void update(float dt) {
+
+        // нажатия из перехвата клавиш на этом экране не нужны; без этого они достались бы игре
+        KeyEventQueue keyEvents = BaseGame.keyEvents;
+        if (keyEvents != null) {
+            while (!keyEvents.isEmpty())
+                keyEvents.poll();
+        }
+
+        if (library.getVersion() != shownVersion)
+            refreshResults();
+        if (library.isScanning() != shownScanning)
+            updateStatusLabel();
+    }
+
+    public boolean keyDown(int keycode) {
+        switch (keycode) {
+            case Keys.ESCAPE:
+                returnToGame();
+                return true;
+            case Keys.ENTER:
+                startSelected();
+                return true;
+            case Keys.UP:
+                select(selected - 1);
+                return true;
+            case Keys.DOWN:
+                select(selected + 1);
+                return true;
+            case Keys.PAGE_UP:
+                select(selected - ROWS);
+                return true;
+            case Keys.PAGE_DOWN:
+                select(selected + ROWS);
+                return true;
+            case Keys.BACKSPACE:
+                if (query.length() > 0) {
+                    query.setLength(query.length() - 1);
+                    refreshResults();
+                }
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    public boolean keyTyped(char character) {
+        if (!Character.isLetterOrDigit(character) && " -_.".indexOf(character) < 0)
+            return false;
+        query.append(character);
+        refreshResults();
+        return true;
+    }
+
+    public boolean scrolled(float amountX, float amountY) {
+        select(selected + (int) Math.signum(amountY));
+        return true;
+    }
+
+    /**
+     * Заново ищет мелодии по строке поиска; выбор остается на той же мелодии, если она еще в списке.
+     */
+    private void refreshResults() {
+        SongEntry current = results != null && selected < results.size() ? results.get(selected) : null;
+        shownVersion = library.getVersion();
+        results = library.find(query.toString());
+
+        // после пересканирования сведения о мелодии - новый объект, поэтому она ищется по пути
+        int index = 0;
+        for (int i = 0; current != null && i < results.size(); i++) {
+            if (results.get(i).getPath().equals(current.getPath())) {
+                index = i;
+                break;
+            }
+        }
+        first = 0;
+        selected = 0;
+        select(index);
+
+        queryLabel.setText(query.length() == 0 ? "Type to search" : "Search: " + query);
+        updateStatusLabel();
+    }
+
+    /**
+     * Переводит выбор на мелодию с заданным номером и листает страницу так, чтобы она была видна.
+     */
+    private void select(int index) {
+        selected = Math.max(0, Math.min(index, results.size() - 1));
+        if (selected < first)
+            first = selected;
+        else if (selected >= first + ROWS)
+            first = selected - ROWS + 1;
+
+        for (int i = 0; i < ROWS; i++) {
+            int entryIndex = first + i;
+            if (entryIndex >= results.size()) {
+                rows[i].setVisible(false);
+                continue;
+            }
+            String title = results.get(entryIndex).getTitle();
+            text.setLength(0);
+            text.append(entryIndex == selected ? "> " : "   ");
+            if (title.length() > MAX_TITLE_LENGTH)
+                text.append(title, 0, MAX_TITLE_LENGTH - 3).append("...");
+            else
+                text.append(title);
+            rows[i].setText(text.toString());
+            rows[i].setVisible(true);
+        }
+        updateInfoLabel();
+    }
+
+    private void updateInfoLabel() {
+        if (results.isEmpty()) {
+            infoLabel.setText(query.length() == 0 ? "No charts in " + SongLibrary.LEVELS_DIRECTORY : "Nothing found");
+            return;
+        }
+
+        SongEntry entry = results.get(selected);
+        int seconds = (int) entry.getDuration();
+        text.setLength(0);
+        text.append(entry.getSongName()).append("   ").append(seconds / 60).append(':');
+        if (seconds % 60 < 10)
+            text.append('0');
+        text.append(seconds % 60).append('\n');
+        text.append(entry.getNoteCount()).append(" notes, ").append(entry.getLaneCount()).append(" lanes, peak ")
+                .append(entry.getPeakDensity()).append(" notes/s");
+        infoLabel.setText(text);
+    }
+
+    private void updateStatusLabel() {
+        shownScanning = library.isScanning();
+        text.setLength(0);
+        text.append(results.size()).append(" / ").append(library.getEntries().length).append(" charts");
+        if (shownScanning)
+            text.append(", scanning...");
+        statusLabel.setText(text);
+    }
+
+    private void startSelected() {
+        if (results.isEmpty())
+            return;
+        BaseGame.setActiveScreen(new RhythmScreen(results.get(selected).getPath()));
+        dispose();
+    }
+
+    private void returnToGame() {
+        BaseGame.setActiveScreen(new RhythmScreen());
+        dispose();
+    }
+}
@@ -0,0 +1,151 @@
+package org.ishgame.engine;
+
+import org.ishgame.SongData;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class GameplayEngineTest {
+
+    private static final float LEAD_TIME = 4;
+
+    /**
+     * Запоминает события игровой логики в порядке их получения.
+     */
+    private static class RecordingListener implements GameplayListener {
+        final List<String> events = new ArrayList<>();
+
+        public void noteSpawned(int lane, float time) {
+            events.add("spawn " + lane);
+        }
+
+        public void noteHit(int lane, Judgment judgment) {
+            events.add("hit " + lane + " " + judgment);
+        }
+
+        public void noteMissed(int lane) {
+            events.add("miss " + lane);
+        }
+
+        public void emptyPress(int lane) {
+            events.add("empty " + lane);
+        }
+    }
+
+    private static SongData chart(int[] lanes, float[] times) {
+        SongData chart = new SongData();
+        chart.declareLanes("A", "S", "D", "F");
+        for (int i = 0; i < lanes.length; i++)
+            chart.addNote(lanes[i], times[i]);
+        return chart;
+    }
+
+    private static GameplayEngine engine(SongData chart, ManualClock clock, GameplayListener listener) {
+        return new GameplayEngine(chart, 4, new int[]{0, 1, 2, 3}, LEAD_TIME, clock, listener);
+    }
+
+    @Test
+    public void judgesEarlyAndLatePressesByTimeOffset() {
+        SongData chart = chart(new int[]{0, 0, 0, 0, 0}, new float[]{1, 2, 3, 4, 5});
+        ManualClock clock = new ManualClock(0);
+        RecordingListener listener = new RecordingListener();
+        GameplayEngine engine = engine(chart, clock, listener);
+        engine.update();
+
+        engine.keyPressed(0, 1 - 0.03f);
+        engine.keyPressed(0, 2 + 0.09f);
+        engine.keyPressed(0, 3 - 0.14f);
+        engine.keyPressed(0, 4 + 0.19f);
+        // слишком рано для любого окна, но нота первая на дорожке: нажатие по ней засчитывается промахом
+        engine.keyPressed(0, 5 - 0.3f);
+
+        listener.events.removeIf(event -> event.startsWith("spawn"));
+        assertEquals(List.of("hit 0 PERFECT", "hit 0 GREAT", "hit 0 GOOD", "hit 0 ALMOST", "hit 0 MISS"),
+                listener.events);
+        assertEquals(100 + 80 + 50 + 20, engine.getScore());
+        assertEquals(4, engine.getMaxCombo());
+        assertEquals(0, engine.getCombo());
+        assertTrue(engine.isFinished());
+    }
+
+    @Test
+    public void inputOffsetIsSubtractedFromPressTime() {
+        SongData chart = chart(new int[]{1}, new float[]{1});
+        ManualClock clock = new ManualClock(0);
+        RecordingListener listener = new RecordingListener();
+        GameplayEngine engine = engine(chart, clock, listener);
+        engine.setInputOffset(0.12f);
+        engine.update();
+
+        engine.keyPressed(1, 1.12f);
+
+        assertEquals(Judgment.PERFECT.points, engine.getScore());
+    }
+
+    @Test
+    public void missSweepRetiresLateNotesOfAllLanesInTimeOrder() {
+        SongData chart = chart(new int[]{0, 2, 1, 3, 0}, new float[]{1, 1.05f, 1.1f, 1.2f, 3});
+        ManualClock clock = new ManualClock(0);
+        RecordingListener listener = new RecordingListener();
+        GameplayEngine engine = engine(chart, clock, listener);
+        engine.update();
+        engine.keyPressed(2, 1.05f);
+
+        listener.events.clear();
+        clock.setTime(1.5f);
+        engine.update();
+
+        // оцененная нота дорожки 2 пропускается, остальные снимаются по времени, нота в 3 с еще ждет
+        assertArrayEquals(new Object[]{"miss 0", "miss 1", "miss 3"}, listener.events.toArray());
+        assertEquals(3, engine.getJudgmentCount(Judgment.MISS));
+        assertEquals(1, engine.getJudgmentCount(Judgment.PERFECT));
+        assertEquals(0, engine.getCombo());
+        assertEquals(1, engine.getMaxCombo());
+        assertFalse(engine.isFinished());
+
+        clock.setTime(3 + ScoringRules.DEFAULT.getLateWindow() + 0.01f);
+        engine.update();
+        assertTrue(engine.isFinished());
+        assertEquals(4, engine.getJudgmentCount(Judgment.MISS));
+    }
+
+    @Test
+    public void pressOnEmptyLaneIsReported() {
+        SongData chart = chart(new int[]{0}, new float[]{10});
+        ManualClock clock = new ManualClock(0);
+        RecordingListener listener = new RecordingListener();
+        GameplayEngine engine = engine(chart, clock, listener);
+        engine.update();
+
+        engine.keyPressed(3, 0.5f);
+
+        assertEquals(List.of("empty 3"), listener.events);
+        assertEquals(0, engine.getScore());
+    }
+
+    @Test
+    public void autoplayScoresEveryNotePerfect() {
+        SongData chart = new SongData();
+        chart.declareLanes("A", "S", "D", "F");
+        for (int i = 0; i < 500; i++)
+            chart.addNote(i % 4, 1 + i * 0.07f);
+
+        GameplaySimulation simulation = new GameplaySimulation(chart, LEAD_TIME);
+        int score = simulation.run(GameplaySimulation.autoplay(chart), 1 / 60f);
+
+        assertEquals(500 * Judgment.PERFECT.points, score);
+        assertEquals(500, simulation.getEngine().getMaxCombo());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void simulationRejectsNonPositiveFrameStep() {
+        SongData chart = chart(new int[]{0}, new float[]{1});
+        new GameplaySimulation(chart, LEAD_TIME).run(GameplaySimulation.autoplay(chart), 0);
+    }
+}
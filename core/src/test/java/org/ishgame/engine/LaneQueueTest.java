@@ -0,0 +1,63 @@
+package org.ishgame.engine;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LaneQueueTest {
+
+    @Test
+    public void keepsOrderWhenGrowingWrappedRing() {
+        LaneQueue queue = new LaneQueue(4);
+        for (int i = 0; i < 4; i++)
+            queue.add(i);
+        queue.removeFirst();
+        queue.removeFirst();
+        // начало очереди теперь в середине буфера, новые ноты записываются по кругу в его начало
+        queue.add(4);
+        queue.add(5);
+        // буфер заполнен и переходит через край: следующая нота увеличивает его
+        queue.add(6);
+        queue.add(7);
+
+        assertEquals(6, queue.size());
+        for (int i = 0; i < 6; i++)
+            assertEquals(2 + i, queue.get(i), 0);
+        for (int i = 0; i < 6; i++)
+            assertEquals(2 + i, queue.removeFirst(), 0);
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void ensureCapacityKeepsWrappedNotes() {
+        LaneQueue queue = new LaneQueue(2);
+        queue.add(0);
+        queue.add(1);
+        queue.removeFirst();
+        queue.add(2);
+
+        queue.ensureCapacity(100);
+        for (int i = 3; i < 100; i++)
+            queue.add(i);
+
+        assertEquals(99, queue.size());
+        assertEquals(1, queue.first(), 0);
+        for (int i = 1; i < 100; i++)
+            assertEquals(i, queue.removeFirst(), 0);
+    }
+
+    @Test
+    public void manyWrapsWithoutGrowth() {
+        LaneQueue queue = new LaneQueue(8);
+        int next = 0;
+        int expected = 0;
+        for (int round = 0; round < 1000; round++) {
+            for (int i = 0; i < 5; i++)
+                queue.add(next++);
+            for (int i = 0; i < 5; i++)
+                assertEquals(expected++, queue.removeFirst(), 0);
+        }
+        assertTrue(queue.isEmpty());
+    }
+}
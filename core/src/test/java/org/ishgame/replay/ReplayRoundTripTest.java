@@ -0,0 +1,157 @@
+package org.ishgame.replay;
+
+import com.badlogic.gdx.files.FileHandle;
+import org.ishgame.SongData;
+import org.ishgame.engine.GameplayEngine;
+import org.ishgame.engine.GameplaySimulation;
+import org.ishgame.engine.Judgment;
+import org.ishgame.engine.ManualClock;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ReplayRoundTripTest {
+
+    private static final String[] LANE_KEYS = {"A", "S", "D", "F"};
+    private static final float LEAD_TIME = 2;
+
+    // разности времени на границах длины varint и знака, в том числе очень большие
+    private static final long[] DELTAS = {0, 1, -1, 63, 64, -64, -65, 127, 128, 16383, 16384, -16384,
+            2_097_151, 2_097_152, 1L << 40, -(1L << 40), 16_667};
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void eventsSurviveChunkBoundaries() throws Exception {
+        FileHandle file = new FileHandle(folder.newFile("events.keyr"));
+        ReplayRecorder recorder = new ReplayRecorder(file, "мелодия.key", "Песня", -1, LEAD_TIME,
+                0.05f, -0.02f, LANE_KEYS);
+
+        // больше, чем помещается во все блоки пула, поэтому блоки и переходят границы, и создаются заново
+        int count = 200_000;
+        long[] times = new long[count];
+        boolean[] ticks = new boolean[count];
+        int[] columns = new int[count];
+        long time = 0;
+        for (int i = 0; i < count; i++) {
+            time += DELTAS[i % DELTAS.length];
+            times[i] = time;
+            ticks[i] = i % 3 == 0;
+            columns[i] = i % LANE_KEYS.length;
+            if (ticks[i])
+                recorder.tick(time);
+            else
+                recorder.keyPressed(columns[i], time);
+        }
+        recorder.close();
+        recorder.awaitWritten();
+
+        assertTrue(file.length() > 8 * 16 * 1024);
+        Replay replay = Replay.read(file);
+        assertEquals("мелодия.key", replay.getChartName());
+        assertEquals("Песня", replay.getSongName());
+        assertEquals(-1, replay.getNoteCount());
+        assertEquals(LEAD_TIME, replay.getLeadTime(), 0);
+        assertEquals(0.05f, replay.getAudioOffset(), 0);
+        assertEquals(-0.02f, replay.getInputOffset(), 0);
+        assertEquals(LANE_KEYS.length, replay.getColumnCount());
+        assertFalse(replay.isFinished());
+
+        assertEquals(count, replay.getEventCount());
+        for (int i = 0; i < count; i++) {
+            assertEquals("event " + i, times[i], replay.getTimeMicros(i));
+            assertEquals("event " + i, ticks[i], replay.isTick(i));
+            if (!ticks[i])
+                assertEquals("event " + i, columns[i], replay.getColumn(i));
+        }
+    }
+
+    @Test
+    public void ticksReachFileDuringPlay() throws Exception {
+        FileHandle file = new FileHandle(folder.newFile("stream.keyr"));
+        ReplayRecorder recorder = new ReplayRecorder(file, "test.key", "test", -1, LEAD_TIME, 0, 0, LANE_KEYS);
+
+        // три секунды по 60 кадров: меньше одного блока, но больше интервала передачи на запись
+        for (int frame = 0; frame <= 180; frame++)
+            recorder.tick(frame * 16_667L);
+        long expected = 180 * 2;
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (file.length() < expected && System.currentTimeMillis() < deadline)
+            Thread.sleep(10);
+        assertTrue("written " + file.length() + " bytes before close", file.length() >= expected);
+
+        recorder.close();
+        recorder.awaitWritten();
+        assertEquals(181, Replay.read(file).getEventCount());
+    }
+
+    @Test
+    public void recordedGameRescoresToSameResult() throws Exception {
+        SongData chart = new SongData();
+        chart.declareLanes(LANE_KEYS);
+        int noteCount = 3000;
+        for (int i = 0; i < noteCount; i++)
+            chart.addNote(i * 7 % 4, 1 + i * 0.05f);
+
+        // неровный игрок: нажатия раньше и позже ноты, пропуски и лишние нажатия;
+        // нажатие хранится как время в микросекундах * 8 + дорожка, чтобы отсортировать их по времени
+        float[] offsets = {-0.1f, -0.04f, 0, 0.03f, 0.08f, 0.15f};
+        long[] presses = new long[noteCount * 2];
+        int pressCount = 0;
+        for (int i = 0; i < noteCount; i++) {
+            long noteMicros = (long) (chart.getTime(i) * 1_000_000);
+            if (i % 7 != 3)
+                presses[pressCount++] = (noteMicros + (long) (offsets[i % offsets.length] * 1_000_000)) * 8 + chart.getLane(i);
+            if (i % 11 == 5)
+                presses[pressCount++] = (noteMicros + 20_000) * 8 + (chart.getLane(i) + 1) % 4;
+        }
+        Arrays.sort(presses, 0, pressCount);
+
+        FileHandle file = new FileHandle(folder.newFile("game.keyr"));
+        ReplayRecorder recorder = new ReplayRecorder(file, "test.key", "test", noteCount, LEAD_TIME,
+                0, 0, LANE_KEYS);
+        ManualClock clock = new ManualClock(-LEAD_TIME);
+        GameplayEngine engine = new GameplayEngine(chart, LANE_KEYS.length, new int[]{0, 1, 2, 3}, LEAD_TIME,
+                clock, GameplaySimulation.SILENT);
+
+        // так же, как в игре: нажатия кадра, затем обновление логики до времени кадра
+        int next = 0;
+        for (long frame = (long) (-LEAD_TIME * 1_000_000); !engine.isFinished(); frame += 16_667) {
+            while (next < pressCount && presses[next] / 8 <= frame) {
+                long micros = presses[next] / 8;
+                int column = (int) (presses[next] % 8);
+                recorder.keyPressed(column, micros);
+                engine.keyPressed(column, micros / 1_000_000f);
+                next++;
+            }
+            recorder.tick(frame);
+            clock.setTime(frame / 1_000_000f);
+            engine.update();
+        }
+        recorder.finish(engine);
+        recorder.awaitWritten();
+
+        assertTrue(engine.getScore() > 0);
+        assertTrue(engine.getJudgmentCount(Judgment.MISS) > 0);
+
+        Replay replay = Replay.read(file);
+        assertTrue(replay.isFinished());
+        assertEquals(engine.getScore(), replay.getScore());
+        assertEquals(engine.getMaxCombo(), replay.getMaxCombo());
+
+        GameplayEngine rescored = ReplayVerifier.replay(replay, chart);
+        assertEquals(engine.getScore(), rescored.getScore());
+        assertEquals(engine.getMaxCombo(), rescored.getMaxCombo());
+        for (Judgment judgment : Judgment.values())
+            assertEquals(judgment.toString(), engine.getJudgmentCount(judgment), rescored.getJudgmentCount(judgment));
+        assertTrue(ReplayVerifier.matches(replay, rescored));
+    }
+}
@@ -0,0 +1,48 @@
+package org.ishgame.lwjgl3;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.backends.lwjgl3.DefaultLwjgl3Input;
+import com.badlogic.gdx.backends.lwjgl3.Lwjgl3Graphics;
+import com.badlogic.gdx.utils.TimeUtils;
+import org.ishgame.KeyCapture;
+import org.ishgame.KeyEventQueue;
+import org.lwjgl.glfw.GLFW;
+import org.lwjgl.glfw.GLFWKeyCallback;
+
+/**
+ * Перехват клавиш через GLFW: собственный key callback окна отмечает нажатие моментом,
+ * когда GLFW его доставил, и передает событие дальше обработчику LibGDX.
+ * <br>
+ * GLFW доставляет события только в потоке, который вызывает glfwPollEvents (главный поток приложения),
+ * поэтому отдельный поток опроса невозможен; зато отметка времени ставится сразу при получении события,
+ * до обработки InputProcessor'ами и отрисовки кадра.
+ */
+public class GlfwKeyCapture implements KeyCapture {
+
+    private long windowHandle;
+    private GLFWKeyCallback callback;
+    private GLFWKeyCallback previousCallback;
+
+    public void start(KeyEventQueue queue) {
+        windowHandle = ((Lwjgl3Graphics) Gdx.graphics).getWindow().getWindowHandle();
+
+        callback = GLFWKeyCallback.create((window, key, scancode, action, mods) -> {
+            if (action == GLFW.GLFW_PRESS)
+                queue.offer(DefaultLwjgl3Input.getGdxKeyCode(key), TimeUtils.nanoTime());
+
+            // обработчик LibGDX по-прежнему получает все события
+            if (previousCallback != null)
+                previousCallback.invoke(window, key, scancode, action, mods);
+        });
+        previousCallback = GLFW.glfwSetKeyCallback(windowHandle, callback);
+    }
+
+    public void stop() {
+        if (callback == null)
+            return;
+
+        GLFW.glfwSetKeyCallback(windowHandle, previousCallback);
+        callback.free();
+        callback = null;
+    }
+}
@@ -14,7 +14,7 @@ public class Lwjgl3Launcher {
     }
 
     private static Lwjgl3Application createApplication() {
-        return new Lwjgl3Application(new RhythmGame(), getDefaultConfiguration());
+        return new Lwjgl3Application(new RhythmGame(new GlfwKeyCapture()), getDefaultConfiguration());
     }
 
     private static Lwjgl3ApplicationConfiguration getDefaultConfiguration() {
@@ -0,0 +1,234 @@
+package org.ishgame.rescore;
+
+import com.badlogic.gdx.files.FileHandle;
+import org.ishgame.SongData;
+import org.ishgame.engine.GameplayEngine;
+import org.ishgame.engine.Judgment;
+import org.ishgame.engine.ScoringRules;
+import org.ishgame.replay.Replay;
+import org.ishgame.replay.ReplayVerifier;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+
+/**
+ * Консольная утилита, которая пересчитывает архив записей игр (.keyr) по новым окнам попадания и очкам.
+ * Мелодии читаются из каталога уровней по одному разу (для каждой задержки звука, с которой они игрались)
+ * и используются всеми потоками только для чтения; записи пересчитываются параллельно в ForkJoinPool.
+ * <br>
+ * Выводит скорость пересчета, распределение нового счета по каждой мелодии и отличия от записанного счета.
+ * С правилами по умолчанию отличий быть не должно, поэтому утилита заодно проверяет весь архив.
+ */
+public class RescoreTool {
+
+    private static final String USAGE = "Usage: RescoreTool [--levels <dir>] [--points p,g,g,a] [--windows p,g,g,a]"
+            + " [--threads n] <replay.keyr or directory>...";
+
+    // результат пересчета одной записи
+    private static final class Result {
+        String chartName;
+        String error;
+        boolean finished;
+        int recordedScore;
+        int score;
+        int events;
+    }
+
+    private final Map<String, FileHandle> chartFiles;
+    private final ScoringRules rules;
+    // мелодия + задержка звука -> загруженная мелодия
+    private final ConcurrentHashMap<String, SongData> charts;
+
+    public RescoreTool(FileHandle levels, ScoringRules rules) {
+        this.rules = rules;
+        chartFiles = new TreeMap<>();
+        for (FileHandle file : levels.list()) {
+            if (file.extension().equals("key") || file.extension().equals("keyb"))
+                chartFiles.put(file.name(), file);
+        }
+        charts = new ConcurrentHashMap<>();
+    }
+
+    public static void main(String[] args) throws InterruptedException, ExecutionException {
+        FileHandle levels = new FileHandle("assets/Levels");
+        int[] points = null;
+        float[] windows = null;
+        int threads = Runtime.getRuntime().availableProcessors();
+        List<FileHandle> replayFiles = new ArrayList<>();
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--levels":
+                    levels = new FileHandle(args[++i]);
+                    break;
+                case "--points":
+                    points = Arrays.stream(args[++i].split(",")).mapToInt(Integer::parseInt).toArray();
+                    break;
+                case "--windows":
+                    String[] values = args[++i].split(",");
+                    windows = new float[values.length];
+                    for (int j = 0; j < values.length; j++)
+                        windows[j] = Float.parseFloat(values[j]);
+                    break;
+                case "--threads":
+                    threads = Integer.parseInt(args[++i]);
+                    break;
+                default:
+                    collectReplays(new FileHandle(args[i]), replayFiles);
+            }
+        }
+
+        if (replayFiles.isEmpty()) {
+            System.out.println(USAGE);
+            return;
+        }
+
+        // не заданные значения берутся из правил игры
+        Judgment[] hits = {Judgment.PERFECT, Judgment.GREAT, Judgment.GOOD, Judgment.ALMOST};
+        if (points == null) {
+            points = new int[hits.length];
+            for (int i = 0; i < hits.length; i++)
+                points[i] = ScoringRules.DEFAULT.getPoints(hits[i]);
+        }
+        if (windows == null) {
+            windows = new float[hits.length];
+            for (int i = 0; i < hits.length; i++)
+                windows[i] = ScoringRules.DEFAULT.getWindow(hits[i]);
+        }
+
+        RescoreTool tool = new RescoreTool(levels, new ScoringRules(points, windows));
+        tool.run(replayFiles, threads);
+    }
+
+    private static void collectReplays(FileHandle file, List<FileHandle> replayFiles) {
+        if (file.isDirectory()) {
+            for (FileHandle child : file.list())
+                collectReplays(child, replayFiles);
+        } else if (file.extension().equals("keyr")) {
+            replayFiles.add(file);
+        }
+    }
+
+    /**
+     * Пересчитывает записи и печатает отчет.
+     *
+     * @param replayFiles файлы записей
+     * @param threads     количество потоков
+     */
+    public void run(List<FileHandle> replayFiles, int threads) throws InterruptedException, ExecutionException {
+        System.out.println("Rules: " + rules);
+
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        long start = System.nanoTime();
+        List<Result> results;
+        try {
+            results = pool.submit(() -> replayFiles.parallelStream().map(this::rescore).collect(Collectors.toList())).get();
+        } finally {
+            pool.shutdown();
+        }
+        float seconds = (System.nanoTime() - start) / 1_000_000_000f;
+
+        long events = 0;
+        for (Result result : results)
+            events += result.events;
+        System.out.println("Re-scored " + results.size() + " replays (" + charts.size() + " charts loaded, " + events
+                + " events) in " + seconds * 1000 + " ms on " + threads + " threads: " + (int) (results.size() / seconds)
+                + " replays/s, " + (long) (events / seconds) + " events/s");
+
+        report(results);
+    }
+
+    private Result rescore(FileHandle file) {
+        Result result = new Result();
+        try {
+            Replay replay = Replay.read(file);
+            result.chartName = replay.getChartName();
+            result.finished = replay.isFinished();
+            result.recordedScore = replay.getScore();
+            result.events = replay.getEventCount();
+
+            FileHandle chartFile = chartFiles.get(replay.getChartName());
+            if (chartFile == null) {
+                result.error = file.name() + ": chart not found: " + replay.getChartName();
+                return result;
+            }
+
+            // время нот зависит от задержки звука, поэтому мелодия загружается для каждой задержки отдельно
+            String key = chartFile.name() + "@" + Float.floatToIntBits(replay.getAudioOffset());
+            SongData chart = charts.computeIfAbsent(key, k -> ReplayVerifier.loadChart(chartFile, replay.getAudioOffset()));
+
+            GameplayEngine engine = ReplayVerifier.replay(replay, chart, rules);
+            result.score = engine.getScore();
+        } catch (RuntimeException e) {
+            result.error = file.name() + ": " + e.getMessage();
+        }
+        return result;
+    }
+
+    private static void report(List<Result> results) {
+        Map<String, List<Result>> byChart = new TreeMap<>();
+        int unfinished = 0;
+        List<String> errors = new ArrayList<>();
+        for (Result result : results) {
+            if (result.error != null) {
+                errors.add(result.error);
+                continue;
+            }
+            if (!result.finished)
+                unfinished++;
+            byChart.computeIfAbsent(result.chartName, k -> new ArrayList<>()).add(result);
+        }
+
+        for (Map.Entry<String, List<Result>> entry : byChart.entrySet()) {
+            List<Result> chartResults = entry.getValue();
+            int[] scores = new int[chartResults.size()];
+            long sum = 0;
+            int changed = 0;
+            int compared = 0;
+            long deltaSum = 0;
+            int minDelta = Integer.MAX_VALUE;
+            int maxDelta = Integer.MIN_VALUE;
+            for (int i = 0; i < scores.length; i++) {
+                Result result = chartResults.get(i);
+                scores[i] = result.score;
+                sum += result.score;
+
+                // у прерванных игр нет записанного счета, сравнивать не с чем
+                if (!result.finished)
+                    continue;
+                int delta = result.score - result.recordedScore;
+                compared++;
+                deltaSum += delta;
+                minDelta = Math.min(minDelta, delta);
+                maxDelta = Math.max(maxDelta, delta);
+                if (delta != 0)
+                    changed++;
+            }
+            Arrays.sort(scores);
+
+            System.out.println(entry.getKey() + ": " + scores.length + " replays, score min " + scores[0]
+                    + ", p25 " + percentile(scores, 25) + ", median " + percentile(scores, 50)
+                    + ", p75 " + percentile(scores, 75) + ", max " + scores[scores.length - 1]
+                    + ", mean " + (float) sum / scores.length);
+            if (compared > 0)
+                System.out.println("    changed " + changed + " of " + compared + ", delta mean "
+                        + (float) deltaSum / compared + ", min " + minDelta + ", max " + maxDelta);
+        }
+
+        if (unfinished > 0)
+            System.out.println("Unfinished replays (no recorded score): " + unfinished);
+        for (String error : errors)
+            System.out.println("Error: " + error);
+    }
+
+    private static int percentile(int[] sorted, int percent) {
+        return sorted[Math.min(sorted.length - 1, sorted.length * percent / 100)];
+    }
+}